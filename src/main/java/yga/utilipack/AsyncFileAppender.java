@@ -0,0 +1,352 @@
+package yga.utilipack;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Appends lines to a file from many threads with group commits. The lines are
+ * queued, and a writer thread keeping the file channel open writes whatever
+ * has been queued in a single batch, optionally forcing it to the disk once per
+ * batch. The writer waits up to the flush interval after the first line of a
+ * batch to gather more lines, so a longer interval makes fewer, larger writes.
+ *
+ * <p>
+ * Lines are written in the order they were queued, each followed by the line
+ * separator of the platform. The queue is bounded: appending waits while it is
+ * full. Write errors are logged and thrown by the next {@link #append(String)},
+ * {@link #flush()} or {@link #close()}: once a write failed, the appender is
+ * failed and drops the lines still queued, so it should be closed and the file
+ * opened again.
+ * </p>
+ *
+ * <p>
+ * The file stays open: if it is deleted, or renamed and replaced as when it is
+ * rotated, the lines are still appended to the old file. Check
+ * {@link #isCurrentFile()} to detect it.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * try (AsyncFileAppender appender = new AsyncFileAppender(new File("audit.log"), StandardCharsets.UTF_8, 10, false)) {
+ * 	appender.append("first line");
+ * 	appender.append("second line");
+ * }
+ * </pre>
+ * </p>
+ */
+public class AsyncFileAppender implements Closeable, Flushable {
+
+	private static final Logger logger = LogManager.getLogger(AsyncFileAppender.class);
+
+	/** Default number of lines the queue can hold. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	// Size of the buffer the lines of a batch are encoded into.
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// Marker queued by close() to wake the writer up, the writer not being
+	// interrupted since that would close the channel.
+	private static final String END = new String();
+
+	private final File file;
+	private final FileChannel channel;
+	private final Object fileKey;
+	private final Charset charset;
+	private final long flushIntervalMillis;
+	private final boolean fsync;
+	private final byte[] lineSeparator;
+	private final BlockingQueue<String> queue;
+	private final Thread writer;
+
+	// Lines queued and lines written so far, and whether the appender is closed,
+	// guarded by this appender.
+	private long queuedLines;
+	private long writtenLines;
+	private volatile boolean closed;
+
+	private volatile IOException error;
+
+	/**
+	 * Opens a file, created if needed, to append lines to it, with a queue of
+	 * {@link #DEFAULT_CAPACITY} lines.
+	 *
+	 * @param file                the file
+	 * @param charset             the charset of the lines
+	 * @param flushIntervalMillis the time the writer waits to gather the lines of
+	 *                            a batch, 0 to write them as soon as possible
+	 * @param fsync               whether to force each batch to the disk
+	 * @throws IOException if the file cannot be opened
+	 */
+	public AsyncFileAppender(File file, Charset charset, long flushIntervalMillis, boolean fsync)
+			throws IOException {
+		this(file, charset, flushIntervalMillis, fsync, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Opens a file, created if needed, to append lines to it.
+	 *
+	 * @param file                the file
+	 * @param charset             the charset of the lines
+	 * @param flushIntervalMillis the time the writer waits to gather the lines of
+	 *                            a batch, 0 to write them as soon as possible
+	 * @param fsync               whether to force each batch to the disk
+	 * @param capacity            the number of lines the queue can hold
+	 * @throws IOException if the file cannot be opened
+	 */
+	public AsyncFileAppender(File file, Charset charset, long flushIntervalMillis, boolean fsync, int capacity)
+			throws IOException {
+		if (flushIntervalMillis < 0 || capacity < 1) {
+			String errorMessage = "Invalid appender settings: flushIntervalMillis=" + flushIntervalMillis
+					+ ", capacity=" + capacity;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		this.file = file;
+		this.charset = charset;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.fsync = fsync;
+		this.lineSeparator = System.lineSeparator().getBytes(charset);
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		this.fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+		this.writer = new Thread(this::writeBatches, "appender-" + file.getName());
+		this.writer.setDaemon(true);
+		this.writer.start();
+		logger.debug("AsyncFileAppender opened on file: " + file);
+	}
+
+	/**
+	 * @return the file the lines are appended to
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Checks if the file at the path of the appender is still the file it
+	 * opened, which is no longer the case once the file was deleted, or renamed
+	 * and replaced. Always true on the file systems without file keys, as long as
+	 * the file exists.
+	 *
+	 * @return true if the lines are appended to the file at the path
+	 */
+	public boolean isCurrentFile() {
+		try {
+			Object currentKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+			return fileKey == null || fileKey.equals(currentKey);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Queues a line to append, waiting while the queue is full.
+	 *
+	 * @param line the line, without line separator
+	 * @throws InterruptedIOException if interrupted while waiting
+	 * @throws IOException            if a previous write failed, the line being
+	 *                                then dropped
+	 */
+	public void append(String line) throws IOException {
+		synchronized (this) {
+			if (closed) {
+				String errorMessage = "The appender of " + file + " is closed";
+				logger.error(errorMessage);
+				throw new IllegalStateException(errorMessage);
+			}
+			if (error != null) {
+				throw error;
+			}
+			queuedLines++;
+		}
+		try {
+			queue.put(line);
+		} catch (InterruptedException e) {
+			synchronized (this) {
+				queuedLines--;
+			}
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while appending to " + file);
+		}
+	}
+
+	/**
+	 * Waits until the lines queued before this call are written, and forced to
+	 * the disk if the appender syncs.
+	 *
+	 * @throws IOException if a write failed or if interrupted while waiting
+	 */
+	@Override
+	public void flush() throws IOException {
+		long target;
+		synchronized (this) {
+			target = queuedLines;
+			while (writtenLines < target && error == null && writer.isAlive()) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while flushing " + file);
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Writes the queued lines and closes the file. Lines can no longer be
+	 * appended.
+	 *
+	 * @throws IOException if a write failed or the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		try {
+			queue.put(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while closing " + file);
+		} finally {
+			if (!writer.isAlive()) {
+				channel.close();
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+		logger.debug("AsyncFileAppender closed on file: " + file);
+	}
+
+	/**
+	 * Writes the queued lines in batches, on the writer thread, until the
+	 * appender is closed and every line counted as queued is written.
+	 */
+	private void writeBatches() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		List<String> batch = new ArrayList<>();
+		while (true) {
+			synchronized (this) {
+				if (closed && writtenLines == queuedLines) {
+					break;
+				}
+			}
+			try {
+				batch.add(queue.take());
+				queue.drainTo(batch);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+				long remaining;
+				while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+					String line = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (line == null) {
+						break;
+					}
+					batch.add(line);
+					queue.drainTo(batch);
+				}
+			} catch (InterruptedException e) {
+				// Not interrupted by the appender: go on with the lines already taken
+				queue.drainTo(batch);
+			}
+			batch.removeIf(line -> line == END);
+			if (!batch.isEmpty()) {
+				write(batch, buffer);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Writes a batch of lines, forcing it to the disk if the appender syncs, and
+	 * wakes up the threads flushing.
+	 *
+	 * @param batch  the lines
+	 * @param buffer the buffer the lines are encoded into
+	 */
+	private void write(List<String> batch, ByteBuffer buffer) {
+		try {
+			if (error == null) {
+				for (String line : batch) {
+					put(line.getBytes(charset), buffer);
+					put(lineSeparator, buffer);
+				}
+				drain(buffer);
+				if (fsync) {
+					channel.force(false);
+				}
+			}
+		} catch (IOException e) {
+			logger.error("An error occurred while appending to file: " + file, e);
+			error = e;
+		} finally {
+			((Buffer) buffer).clear();
+			synchronized (this) {
+				writtenLines += batch.size();
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Copies bytes into the buffer, writing it to the file whenever it is full.
+	 *
+	 * @param bytes  the bytes
+	 * @param buffer the buffer
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void put(byte[] bytes, ByteBuffer buffer) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!buffer.hasRemaining()) {
+				drain(buffer);
+			}
+			int length = Math.min(bytes.length - offset, buffer.remaining());
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Writes the content of the buffer to the file and clears it.
+	 *
+	 * @param buffer the buffer
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void drain(ByteBuffer buffer) throws IOException {
+		// Called through Buffer, whose flip() and clear() return Buffer on Java 8
+		((Buffer) buffer).flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	}
+}
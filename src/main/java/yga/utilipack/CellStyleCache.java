@@ -0,0 +1,204 @@
+package yga.utilipack;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Color;
+import org.apache.poi.ss.usermodel.ExtendedColor;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+
+/**
+ * Cache of the cell styles created in an output workbook while copying cells
+ * from other workbooks. Source styles with the same content (font, fill,
+ * borders, alignment and number format) are mapped to a single target style,
+ * which keeps the output under Excel's style limit and avoids cloning a style
+ * for every copied cell.
+ *
+ * <p>
+ * The cache only stores style indices, never workbook objects, so it does not
+ * keep any workbook alive. Like workbooks, it is not thread-safe.
+ * </p>
+ */
+public class CellStyleCache {
+
+	private static final Logger logger = LogManager.getLogger(CellStyleCache.class);
+
+	// Target style index by source style content.
+	private final Map<String, Integer> stylesByContent = new HashMap<>();
+
+	// Target style index by source style index, for each source workbook.
+	private final Map<Object, Map<Integer, Integer>> stylesBySource = new WeakHashMap<>();
+
+	// Number of lookups resolved without creating a style.
+	private long hits = 0;
+
+	// Number of lookups which created a new style.
+	private long misses = 0;
+
+	/**
+	 * Retrieves the style of the output workbook matching a source style,
+	 * creating it on the first lookup of that content.
+	 *
+	 * @param outputWorkbook the output workbook the cache belongs to
+	 * @param sourceOwner    the object owning the source style, such as the source
+	 *                       workbook, used to skip the content comparison for styles
+	 *                       already seen
+	 * @param sourceStyle    the source style
+	 * @return the matching style of the output workbook
+	 */
+	public CellStyle getStyle(Workbook outputWorkbook, Object sourceOwner, CellStyle sourceStyle) {
+		Map<Integer, Integer> sourceStyles = stylesBySource.get(sourceOwner);
+		if (sourceStyles == null) {
+			sourceStyles = new HashMap<>();
+			stylesBySource.put(sourceOwner, sourceStyles);
+		}
+
+		int sourceIndex = sourceStyle.getIndex() & 0xFFFF;
+		Integer targetIndex = sourceStyles.get(sourceIndex);
+		if (targetIndex == null) {
+			String contentKey = getContentKey(sourceStyle);
+			targetIndex = stylesByContent.get(contentKey);
+			if (targetIndex == null) {
+				CellStyle targetStyle = outputWorkbook.createCellStyle();
+				targetStyle.cloneStyleFrom(sourceStyle);
+				targetIndex = targetStyle.getIndex() & 0xFFFF;
+				stylesByContent.put(contentKey, targetIndex);
+				misses++;
+				sourceStyles.put(sourceIndex, targetIndex);
+				return targetStyle;
+			}
+			sourceStyles.put(sourceIndex, targetIndex);
+		}
+		hits++;
+		return outputWorkbook.getCellStyleAt(targetIndex);
+	}
+
+	/**
+	 * @return the number of lookups resolved with an existing style
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups which created a new style
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of distinct styles created in the output workbook
+	 */
+	public int getStyleCount() {
+		return stylesByContent.size();
+	}
+
+	/**
+	 * Resets the hit and miss counters, keeping the cached styles.
+	 */
+	public void resetStats() {
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * Logs the hit and miss counters.
+	 */
+	public void logStats() {
+		logger.info(toString());
+	}
+
+	@Override
+	public String toString() {
+		return "CellStyleCache [hits=" + hits + ", misses=" + misses + ", styles=" + stylesByContent.size() + "]";
+	}
+
+	/**
+	 * Builds a key describing the content of a style, independent of the workbook
+	 * it belongs to.
+	 *
+	 * @param style the style
+	 * @return the content key
+	 */
+	private static String getContentKey(CellStyle style) {
+		StringBuilder key = new StringBuilder(128);
+		key.append(style.getDataFormatString()).append('|');
+		key.append(style.getAlignment()).append(',').append(style.getVerticalAlignment()).append(',');
+		key.append(style.getWrapText()).append(',').append(style.getIndention()).append(',');
+		key.append(style.getRotation()).append(',').append(style.getLocked()).append(',');
+		key.append(style.getHidden()).append(',').append(style.getShrinkToFit()).append(',');
+		key.append(style.getQuotePrefixed()).append('|');
+		key.append(style.getBorderTop()).append(',').append(style.getBorderBottom()).append(',');
+		key.append(style.getBorderLeft()).append(',').append(style.getBorderRight()).append('|');
+		key.append(style.getFillPattern()).append('|');
+
+		if (style instanceof XSSFCellStyle) {
+			XSSFCellStyle xssfStyle = (XSSFCellStyle) style;
+			appendColor(key, xssfStyle.getTopBorderXSSFColor());
+			appendColor(key, xssfStyle.getBottomBorderXSSFColor());
+			appendColor(key, xssfStyle.getLeftBorderXSSFColor());
+			appendColor(key, xssfStyle.getRightBorderXSSFColor());
+			appendColor(key, xssfStyle.getFillForegroundXSSFColor());
+			appendColor(key, xssfStyle.getFillBackgroundXSSFColor());
+			key.append('|');
+			appendFont(key, xssfStyle.getFont());
+		} else {
+			key.append(style.getTopBorderColor()).append(',').append(style.getBottomBorderColor()).append(',');
+			key.append(style.getLeftBorderColor()).append(',').append(style.getRightBorderColor()).append(',');
+			key.append(style.getFillForegroundColor()).append(',').append(style.getFillBackgroundColor());
+			key.append('|').append(style.getFontIndex());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Appends the content of a font to a style key.
+	 *
+	 * @param key  the key being built
+	 * @param font the font
+	 */
+	private static void appendFont(StringBuilder key, Font font) {
+		key.append(font.getFontName()).append(',').append(font.getFontHeight()).append(',');
+		key.append(font.getBold()).append(',').append(font.getItalic()).append(',');
+		key.append(font.getUnderline()).append(',').append(font.getStrikeout()).append(',');
+		key.append(font.getTypeOffset()).append(',').append(font.getCharSet()).append(',');
+		if (font instanceof XSSFFont) {
+			appendColor(key, ((XSSFFont) font).getXSSFColor());
+		} else {
+			key.append(font.getColor());
+		}
+	}
+
+	/**
+	 * Appends the content of a color to a style key.
+	 *
+	 * @param key   the key being built
+	 * @param color the color, can be null
+	 */
+	private static void appendColor(StringBuilder key, Color color) {
+		if (color instanceof ExtendedColor) {
+			ExtendedColor extendedColor = (ExtendedColor) color;
+			if (extendedColor.isAuto()) {
+				key.append("auto");
+			} else if (extendedColor.isIndexed()) {
+				key.append('i').append(extendedColor.getIndex());
+			} else if (extendedColor.isThemed()) {
+				key.append('t').append(extendedColor.getTheme());
+			} else {
+				key.append('#').append(extendedColor.getARGBHex());
+			}
+			key.append('~').append(extendedColor.getTint());
+		} else {
+			key.append('-');
+		}
+		key.append(';');
+	}
+}
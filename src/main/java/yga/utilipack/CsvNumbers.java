@@ -0,0 +1,99 @@
+package yga.utilipack;
+
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Checks and parses the numbers of CSV values, so that the classes typing or
+ * sorting them agree on what a number is: an optional sign, digits with an
+ * optional decimal point, a dot or the regional decimal separator, and an
+ * optional exponent. {@code NaN}, {@code Infinity}, hexadecimal literals and
+ * type suffixes, all accepted by {@link Double#parseDouble(String)}, are not
+ * numbers, nor are the numbers a {@code double} cannot hold.
+ */
+final class CsvNumbers {
+
+	/** Regional decimal separator, accepted besides the dot. */
+	static final char DECIMAL_SEPARATOR = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+	/**
+	 * Checks if a text is an integer a {@code long} can hold, with an optional
+	 * sign.
+	 *
+	 * @param text the text, not empty
+	 * @return true if the text is a {@code long}
+	 */
+	static boolean isInteger(String text) {
+		int length = text.length();
+		int start = text.charAt(0) == '-' || text.charAt(0) == '+' ? 1 : 0;
+		if (length == start) {
+			return false;
+		}
+		for (int i = start; i < length; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		if (length - start < 19) {
+			return true;
+		}
+		try {
+			Long.parseLong(text);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks if a text is a finite decimal number: an optional sign, digits with
+	 * an optional decimal point, a dot or the regional decimal separator, and an
+	 * optional exponent.
+	 *
+	 * @param text the text, not empty
+	 * @return true if the text is a number a {@code double} can hold
+	 */
+	static boolean isDecimal(String text) {
+		int length = text.length();
+		int i = text.charAt(0) == '-' || text.charAt(0) == '+' ? 1 : 0;
+		int digits = 0;
+		while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+			i++;
+			digits++;
+		}
+		if (i < length && (text.charAt(i) == '.' || text.charAt(i) == DECIMAL_SEPARATOR)) {
+			i++;
+			while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+				i++;
+				digits++;
+			}
+		}
+		if (digits == 0) {
+			return false;
+		}
+		if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+			i++;
+			if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+				i++;
+			}
+			int exponentStart = i;
+			while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+				i++;
+			}
+			if (i == exponentStart) {
+				return false;
+			}
+		}
+		return i == length && Double.isFinite(parseDecimal(text));
+	}
+
+	/**
+	 * Parses a number checked by {@link #isDecimal(String)}.
+	 *
+	 * @param text the text of the number
+	 * @return the value of the number
+	 */
+	static double parseDecimal(String text) {
+		return Double.parseDouble(DECIMAL_SEPARATOR == '.' ? text : text.replace(DECIMAL_SEPARATOR, '.'));
+	}
+}
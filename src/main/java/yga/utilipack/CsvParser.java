@@ -0,0 +1,679 @@
+package yga.utilipack;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * RFC 4180 CSV parser working on a memory-mapped file. Fields may be quoted,
+ * contain the separator, line breaks and quotes doubled inside quotes. Records
+ * end with LF, CRLF or CR.
+ *
+ * <p>
+ * The file is mapped in windows of at most {@link #WINDOW_SIZE} bytes, so files
+ * larger than 2 GB are read a window after the other. A parser can also read
+ * an input stream, such as a decompressed one, into a heap window of
+ * {@link #STREAM_WINDOW_SIZE} bytes refilled as the records are parsed. Parsing
+ * a record only records where its fields start and end: a field is decoded
+ * from UTF-8, or the charset set with {@link #setCharset(Charset)}, when it is
+ * requested with {@link #getField(int)}, so the fields a caller does not use
+ * cost nothing more than the scan of their bytes.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * try (CsvParser parser = new CsvParser(new File("input.csv"))) {
+ * 	while (parser.next()) {
+ * 		System.out.println(parser.getField(0));
+ * 	}
+ * }
+ * </pre>
+ * </p>
+ */
+public class CsvParser implements Closeable {
+
+	private static final Logger logger = LogManager.getLogger(CsvParser.class);
+
+	/** Maximum size of the part of the file mapped at once. */
+	public static final int WINDOW_SIZE = 1 << 26;
+
+	/** Size of the window an input stream is read into. */
+	public static final int STREAM_WINDOW_SIZE = 1 << 20;
+
+	// The channel of the file, or the input stream read instead.
+	private final FileChannel channel;
+	private final InputStream input;
+	private final byte separator;
+
+	// Charset the fields are decoded from.
+	private Charset charset = StandardCharsets.UTF_8;
+
+	// Size of the file, or of the stream once its end is read.
+	private long fileSize;
+
+	// Offset of the end of the range of the file parsed: records starting at or
+	// after it are not parsed.
+	private long rangeEnd;
+
+	// The window, mapped or read from the stream, its offset in the file and the
+	// number of bytes it holds.
+	private ByteBuffer window;
+	private long windowOffset;
+	private int windowLimit;
+	private int windowSize = WINDOW_SIZE;
+
+	// Position of the next record in the window.
+	private int position;
+
+	// Bounds of the fields of the current record in the window, and whether each
+	// field is quoted or holds doubled quotes.
+	private int fieldCount;
+	private int[] fieldStarts = new int[16];
+	private int[] fieldEnds = new int[16];
+	private byte[] fieldFlags = new byte[16];
+
+	// Offset in the file of the current record.
+	private long recordOffset = -1;
+
+	// Whether the current record ends with a line break.
+	private boolean recordTerminated;
+
+	// Buffer the fields are copied into before being decoded.
+	private byte[] decodeBuffer = new byte[256];
+
+	private static final byte QUOTED = 1;
+	private static final byte ESCAPED_QUOTES = 2;
+
+	// States of the machine finding the record boundaries in splitRecords, and
+	// the flag of the transitions ending a record.
+	private static final int FIELD_START = 0;
+	private static final int IN_FIELD = 1;
+	private static final int IN_QUOTES = 2;
+	private static final int QUOTE_IN_QUOTES = 3;
+	private static final int AFTER_CR = 4;
+	private static final int STATES = 5;
+	private static final int RECORD_END = 8;
+
+	/**
+	 * Opens a CSV file using the regional separator of {@link CsvUtils}.
+	 *
+	 * @param file the CSV file
+	 * @throws IOException if the file cannot be opened
+	 */
+	public CsvParser(File file) throws IOException {
+		this(file, CsvUtils.getSeparator());
+	}
+
+	/**
+	 * Opens a CSV file.
+	 *
+	 * @param file      the CSV file
+	 * @param separator the field separator, an ASCII character
+	 * @throws IOException if the file cannot be opened
+	 */
+	public CsvParser(File file, char separator) throws IOException {
+		this(file, separator, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Opens a range of a CSV file, such as one returned by
+	 * {@link #splitRecords(File, char, int, ForkJoinPool)}. The range must start on a
+	 * record boundary; the records starting before its end are parsed, the last
+	 * one running past the end if needed.
+	 *
+	 * @param file      the CSV file
+	 * @param separator the field separator, an ASCII character
+	 * @param start     the offset of the first record of the range
+	 * @param end       the offset of the end of the range
+	 * @throws IOException if the file cannot be opened
+	 */
+	public CsvParser(File file, char separator, long start, long end) throws IOException {
+		this.separator = checkSeparator(separator);
+		this.input = null;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			this.fileSize = channel.size();
+			this.rangeEnd = Math.min(end, fileSize);
+			map(Math.min(start, fileSize));
+			if (start == 0) {
+				skipByteOrderMark();
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		logger.debug("CsvParser opened on file: " + file);
+	}
+
+	/**
+	 * Opens a CSV input stream, read into a window of
+	 * {@link #STREAM_WINDOW_SIZE} bytes, larger if a record does not fit. The
+	 * stream is closed with the parser. Offsets are counted in bytes read from the
+	 * stream.
+	 *
+	 * @param input     the CSV input stream
+	 * @param separator the field separator, an ASCII character
+	 * @throws IOException if the stream cannot be read
+	 */
+	public CsvParser(InputStream input, char separator) throws IOException {
+		this.separator = checkSeparator(separator);
+		this.input = input;
+		this.channel = null;
+		this.fileSize = Long.MAX_VALUE;
+		this.rangeEnd = Long.MAX_VALUE;
+		this.windowSize = STREAM_WINDOW_SIZE;
+		try {
+			map(0);
+			skipByteOrderMark();
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+		logger.debug("CsvParser opened on input stream");
+	}
+
+	/**
+	 * Sets the charset the fields are decoded from, UTF-8 by default. The records
+	 * being split on bytes, the charset must encode ASCII characters as ASCII, as
+	 * ISO-8859-1 or windows-1252 do.
+	 *
+	 * @param charset the charset of the file
+	 */
+	public void setCharset(Charset charset) {
+		String delimiters = "\"\r\n" + (char) separator;
+		if (!Arrays.equals(delimiters.getBytes(charset), delimiters.getBytes(StandardCharsets.US_ASCII))) {
+			String errorMessage = "Unsupported CSV charset, not encoding ASCII as ASCII: " + charset;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		this.charset = charset;
+	}
+
+	/**
+	 * Parses the next record.
+	 *
+	 * @return true if a record was parsed, false at the end of the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			if (windowOffset + position >= rangeEnd) {
+				fieldCount = 0;
+				return false;
+			}
+			if (parseRecord()) {
+				return true;
+			}
+			// The record goes past the end of the window: map from its start, with a
+			// larger window if it does not fit in a whole one
+			if (position == 0) {
+				if (windowSize == Integer.MAX_VALUE) {
+					throw new IOException("CSV record larger than 2 GB at offset " + windowOffset);
+				}
+				windowSize = (int) Math.min(Integer.MAX_VALUE, windowSize * 2L);
+			}
+			map(windowOffset + position);
+		}
+	}
+
+	/**
+	 * @return the number of fields of the current record
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Decodes a field of the current record, removing its quotes.
+	 *
+	 * @param index the 0-based index of the field
+	 * @return the value of the field, or null if the record has fewer fields
+	 */
+	public String getField(int index) {
+		if (index >= fieldCount) {
+			return null;
+		}
+		int start = fieldStarts[index];
+		int length = fieldEnds[index] - start;
+		if (length == 0) {
+			return "";
+		}
+		String value;
+		if (window.hasArray()) {
+			value = new String(window.array(), start, length, charset);
+		} else {
+			if (decodeBuffer.length < length) {
+				decodeBuffer = new byte[Math.max(length, decodeBuffer.length * 2)];
+			}
+			for (int i = 0; i < length; i++) {
+				decodeBuffer[i] = window.get(start + i);
+			}
+			value = new String(decodeBuffer, 0, length, charset);
+		}
+		return (fieldFlags[index] & ESCAPED_QUOTES) != 0 ? value.replace("\"\"", "\"") : value;
+	}
+
+	/**
+	 * Checks if a field of the current record is empty, without decoding it.
+	 *
+	 * @param index the 0-based index of the field
+	 * @return true if the field is empty or missing, false otherwise
+	 */
+	public boolean isEmpty(int index) {
+		return index >= fieldCount || fieldEnds[index] == fieldStarts[index];
+	}
+
+	/**
+	 * @return the offset in the file of the first byte of the current record, or
+	 *         -1 before the first record
+	 */
+	public long getRecordOffset() {
+		return recordOffset;
+	}
+
+	/**
+	 * Checks if the current record ends with a line break rather than with the
+	 * end of the file, which is not the case of a record still being written: its
+	 * last field, possibly a quoted field with line breaks, may not be complete.
+	 *
+	 * @return true if the record ends with LF, CRLF or CR
+	 */
+	public boolean isRecordTerminated() {
+		return recordTerminated;
+	}
+
+	/**
+	 * @return the offset in the file of the first byte after the current record
+	 */
+	public long getOffset() {
+		return windowOffset + position;
+	}
+
+	/**
+	 * Closes the file or the input stream. The mapped windows are released by the
+	 * garbage collector.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		window = null;
+		if (channel != null) {
+			channel.close();
+		} else {
+			input.close();
+		}
+	}
+
+	/**
+	 * Splits a CSV file into ranges starting on record boundaries, to be parsed
+	 * in parallel. The file is cut into chunks of at most {@link #WINDOW_SIZE}
+	 * bytes, scanned on the pool with the state machine of the parser: a quote
+	 * only opens a quoted field at the start of a field, as in
+	 * {@link #parseRecord()}. Since the state at the start of a chunk is only
+	 * known once the previous chunks are scanned, each chunk is scanned from
+	 * every state at once, the runs merging as soon as they reach the same state,
+	 * which happens at the first field boundary outside quotes. The states at the
+	 * ends of the chunks, chained in order, then tell which line feed of each
+	 * chunk is the first to end a record. Chunks without such a line feed are
+	 * merged with the previous range.
+	 *
+	 * @param file      the CSV file
+	 * @param separator the field separator, an ASCII character
+	 * @param splits    the number of ranges wanted
+	 * @param pool      the pool scanning the chunks
+	 * @return the offsets of the starts of the ranges, followed by the size of the
+	 *         file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static long[] splitRecords(File file, char separator, int splits, ForkJoinPool pool) throws IOException {
+		byte[] transitions = buildTransitions(checkSeparator(separator));
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long chunkSize = Math.max(1, Math.min(WINDOW_SIZE, (size + splits - 1) / Math.max(1, splits)));
+			int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+
+			List<ForkJoinTask<long[]>> scans = new ArrayList<>(chunks);
+			for (int i = 0; i < chunks; i++) {
+				long start = i * chunkSize;
+				long end = Math.min(size, start + chunkSize);
+				scans.add(pool.submit(() -> scanChunk(channel, start, end, transitions)));
+			}
+
+			List<Long> bounds = new ArrayList<>();
+			bounds.add(0L);
+			int state = FIELD_START;
+			for (ForkJoinTask<long[]> scanTask : scans) {
+				long[] scan;
+				try {
+					scan = scanTask.join();
+				} catch (UncheckedIOException e) {
+					throw e.getCause();
+				}
+				long lineFeed = scan[STATES + state];
+				if (scanTask != scans.get(0) && lineFeed >= 0 && lineFeed + 1 < size) {
+					bounds.add(lineFeed + 1);
+				}
+				state = (int) scan[state];
+			}
+			bounds.add(size);
+
+			long[] result = new long[bounds.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = bounds.get(i);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Builds the transition table of the state machine used to find the record
+	 * boundaries, indexed by the state and the byte read. An entry holds the next
+	 * state, and {@link #RECORD_END} if the byte is a line feed ending a record.
+	 *
+	 * @param separator the field separator
+	 * @return the transition table
+	 */
+	private static byte[] buildTransitions(byte separator) {
+		byte[] transitions = new byte[STATES << 8];
+		for (int state = 0; state < STATES; state++) {
+			for (int b = 0; b < 256; b++) {
+				int next;
+				if (state == IN_QUOTES) {
+					next = b == '"' ? QUOTE_IN_QUOTES : IN_QUOTES;
+				} else if (state == QUOTE_IN_QUOTES && b == '"') {
+					next = IN_QUOTES; // Doubled quote
+				} else if (b == separator) {
+					next = FIELD_START;
+				} else if (b == '\n') {
+					next = FIELD_START | RECORD_END;
+				} else if (b == '\r') {
+					next = AFTER_CR;
+				} else if (b == '"' && (state == FIELD_START || state == AFTER_CR)) {
+					next = IN_QUOTES;
+				} else {
+					// Unquoted field, or bytes between a closing quote and the separator
+					next = IN_FIELD;
+				}
+				if (state == AFTER_CR && b == '\n') {
+					next = FIELD_START | RECORD_END; // The record ended with CRLF
+				}
+				transitions[state << 8 | b] = (byte) next;
+			}
+		}
+		return transitions;
+	}
+
+	/**
+	 * Scans a chunk of a file from every state of the record boundary state
+	 * machine.
+	 *
+	 * @param channel     the channel of the file
+	 * @param start       the offset of the chunk
+	 * @param end         the offset of the end of the chunk
+	 * @param transitions the transition table of the state machine
+	 * @return for each state at the start of the chunk, the state at its end,
+	 *         followed for each state at the start of the chunk by the offset of
+	 *         the first line feed ending a record, -1 if none
+	 */
+	private static long[] scanChunk(FileChannel channel, long start, long end, byte[] transitions) {
+		MappedByteBuffer chunk;
+		try {
+			chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		int[] states = new int[STATES];
+		long[] lineFeeds = new long[STATES];
+		for (int state = 0; state < STATES; state++) {
+			states[state] = state;
+			lineFeeds[state] = -1;
+		}
+		int length = (int) (end - start);
+		int i = 0;
+		if (start == 0 && length >= 3 && (chunk.get(0) & 0xFF) == 0xEF && (chunk.get(1) & 0xFF) == 0xBB
+				&& (chunk.get(2) & 0xFF) == 0xBF) {
+			i = 3; // Byte order mark, skipped by the parser
+		}
+
+		// Run from every state until the runs merge
+		boolean merged = false;
+		while (i < length && !merged) {
+			int b = chunk.get(i) & 0xFF;
+			merged = true;
+			for (int state = 0; state < STATES; state++) {
+				int next = transitions[states[state] << 8 | b];
+				if ((next & RECORD_END) != 0 && lineFeeds[state] < 0) {
+					lineFeeds[state] = start + i;
+				}
+				states[state] = next & ~RECORD_END;
+				merged &= states[state] == states[0];
+			}
+			i++;
+		}
+
+		// Then run once for all of them
+		if (merged) {
+			int current = states[0];
+			for (; i < length; i++) {
+				int next = transitions[current << 8 | (chunk.get(i) & 0xFF)];
+				if ((next & RECORD_END) != 0) {
+					for (int state = 0; state < STATES; state++) {
+						if (lineFeeds[state] < 0) {
+							lineFeeds[state] = start + i;
+						}
+					}
+				}
+				current = next & ~RECORD_END;
+			}
+			Arrays.fill(states, current);
+		}
+
+		long[] result = new long[STATES * 2];
+		for (int state = 0; state < STATES; state++) {
+			result[state] = states[state];
+			result[STATES + state] = lineFeeds[state];
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the record starting at the current position.
+	 *
+	 * @return true if the record was parsed, false if it goes past the end of the
+	 *         window and the window does not end the file
+	 */
+	private boolean parseRecord() {
+		boolean lastWindow = windowOffset + windowLimit >= fileSize;
+		int p = position;
+		fieldCount = 0;
+		boolean terminated = false;
+		while (true) {
+			int start = p;
+			int end;
+			byte flags = 0;
+			if (p < windowLimit && window.get(p) == '"') {
+				// Quoted field, ending at a quote not followed by another quote
+				flags = QUOTED;
+				start = ++p;
+				while (true) {
+					if (p >= windowLimit) {
+						if (!lastWindow) {
+							return false;
+						}
+						end = p; // Unterminated quote, the field runs to the end of the file
+						break;
+					}
+					if (window.get(p) == '"') {
+						if (p + 1 < windowLimit && window.get(p + 1) == '"') {
+							flags |= ESCAPED_QUOTES;
+							p += 2;
+							continue;
+						}
+						if (p + 1 >= windowLimit && !lastWindow) {
+							return false;
+						}
+						end = p++;
+						break;
+					}
+					p++;
+				}
+				// Skip anything between the closing quote and the separator
+				while (p < windowLimit && !isDelimiter(window.get(p))) {
+					p++;
+				}
+			} else {
+				while (p < windowLimit && !isDelimiter(window.get(p))) {
+					p++;
+				}
+				end = p;
+			}
+			addField(start, end, flags);
+
+			if (p >= windowLimit) {
+				if (!lastWindow) {
+					return false;
+				}
+				break;
+			}
+			byte b = window.get(p++);
+			if (b == separator) {
+				continue;
+			}
+			if (b == '\r') {
+				if (p >= windowLimit && !lastWindow) {
+					return false;
+				}
+				if (p < windowLimit && window.get(p) == '\n') {
+					p++;
+				}
+			}
+			terminated = true;
+			break;
+		}
+		recordOffset = windowOffset + position;
+		recordTerminated = terminated;
+		position = p;
+		return true;
+	}
+
+	/**
+	 * Checks if a byte ends an unquoted field.
+	 *
+	 * @param b the byte
+	 * @return true for the separator and line breaks
+	 */
+	private boolean isDelimiter(byte b) {
+		return b == separator || b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Records the bounds of a field of the current record.
+	 *
+	 * @param start the start of the field in the window
+	 * @param end   the end of the field in the window
+	 * @param flags the quoting flags of the field
+	 */
+	private void addField(int start, int end, byte flags) {
+		if (fieldCount == fieldStarts.length) {
+			fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+			fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+			fieldFlags = Arrays.copyOf(fieldFlags, fieldCount * 2);
+		}
+		fieldStarts[fieldCount] = start;
+		fieldEnds[fieldCount] = end;
+		fieldFlags[fieldCount] = flags;
+		fieldCount++;
+	}
+
+	/**
+	 * Maps the window starting at the given offset of the file, or reads it from
+	 * the input stream.
+	 *
+	 * @param offset the offset of the window in the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void map(long offset) throws IOException {
+		if (channel == null) {
+			fill(offset);
+			return;
+		}
+		windowOffset = offset;
+		windowLimit = (int) Math.min(windowSize, fileSize - offset);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowLimit);
+		position = 0;
+	}
+
+	/**
+	 * Reads the window starting at the given offset of the input stream, keeping
+	 * the bytes of the previous window from that offset. The end of the stream
+	 * sets the size of the file.
+	 *
+	 * @param offset the offset of the window in the stream, within the previous
+	 *               window
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void fill(long offset) throws IOException {
+		int kept = (int) (windowOffset + windowLimit - offset);
+		byte[] previous = window != null ? window.array() : new byte[0];
+		byte[] array = previous.length == windowSize ? previous : new byte[windowSize];
+		System.arraycopy(previous, (int) (offset - windowOffset), array, 0, kept);
+		int limit = kept;
+		while (limit < array.length) {
+			int read = input.read(array, limit, array.length - limit);
+			if (read < 0) {
+				fileSize = offset + limit;
+				rangeEnd = Math.min(rangeEnd, fileSize);
+				break;
+			}
+			limit += read;
+		}
+		window = ByteBuffer.wrap(array);
+		windowOffset = offset;
+		windowLimit = limit;
+		position = 0;
+	}
+
+	/**
+	 * Checks that a character can separate the fields.
+	 *
+	 * @param separator the field separator
+	 * @return the separator as a byte
+	 */
+	private static byte checkSeparator(char separator) {
+		if (separator > 0x7F || separator == '"' || separator == '\n' || separator == '\r') {
+			String errorMessage = "Invalid CSV separator: " + separator;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		return (byte) separator;
+	}
+
+	/**
+	 * Skips the UTF-8 byte order mark at the start of the file, if any.
+	 */
+	private void skipByteOrderMark() {
+		if (windowLimit >= 3 && (window.get(0) & 0xFF) == 0xEF && (window.get(1) & 0xFF) == 0xBB
+				&& (window.get(2) & 0xFF) == 0xBF) {
+			position = 3;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package yga.utilipack;
+
+import java.util.Map;
+
+/**
+ * View on the current record of a {@link CsvParser}, as streamed by
+ * {@link CsvUtils#streamRows(String, boolean)}. The same instance is reused for
+ * every record of a parser and only shows the current one, so a row must not be
+ * kept once the next one has been read: copy its values with
+ * {@link #toArray()} if needed. Fields are decoded when they are read.
+ */
+public class CsvRow {
+
+	private final CsvParser parser;
+
+	// Index of the columns by normalized header name, empty without header.
+	private final Map<String, Integer> headerIndex;
+
+	/**
+	 * Creates the view on the current record of a parser.
+	 *
+	 * @param parser      the parser
+	 * @param headerIndex the index of the columns by normalized header name
+	 */
+	CsvRow(CsvParser parser, Map<String, Integer> headerIndex) {
+		this.parser = parser;
+		this.headerIndex = headerIndex;
+	}
+
+	/**
+	 * @return the number of fields of the record
+	 */
+	public int getFieldCount() {
+		return parser.getFieldCount();
+	}
+
+	/**
+	 * Retrieves a field of the record.
+	 *
+	 * @param index the 0-based index of the field
+	 * @return the value of the field, or null if the record has fewer fields
+	 */
+	public String get(int index) {
+		return parser.getField(index);
+	}
+
+	/**
+	 * Retrieves a field of the record from the header of its column, compared
+	 * after normalization as in {@link XlsxUtils#copyRowsToOutputSheet}.
+	 *
+	 * @param headerName the header of the column
+	 * @return the value of the field, or null if the column or the field is
+	 *         missing
+	 */
+	public String get(String headerName) {
+		Integer index = headerIndex.get(XlsxUtils.normalizeHeaderName(headerName));
+		return index != null ? parser.getField(index) : null;
+	}
+
+	/**
+	 * Checks if a field of the record is empty, without decoding it.
+	 *
+	 * @param index the 0-based index of the field
+	 * @return true if the field is empty or missing, false otherwise
+	 */
+	public boolean isEmpty(int index) {
+		return parser.isEmpty(index);
+	}
+
+	/**
+	 * @return the offset in the file of the first byte of the record
+	 */
+	public long getOffset() {
+		return parser.getRecordOffset();
+	}
+
+	/**
+	 * Copies the fields of the record.
+	 *
+	 * @return the values of the fields
+	 */
+	public String[] toArray() {
+		String[] values = new String[parser.getFieldCount()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = parser.getField(i);
+		}
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		return "CsvRow [offset=" + getOffset() + ", fields=" + getFieldCount() + "]";
+	}
+}
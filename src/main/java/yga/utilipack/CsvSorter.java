@@ -0,0 +1,646 @@
+package yga.utilipack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import yga.utilipack.CsvTable.ColumnType;
+
+/**
+ * External merge sort for CSV files larger than the heap. The records of the
+ * input file are read with a {@link CsvParser} into runs held in memory until
+ * their estimated size reaches the memory budget; each run is sorted and
+ * spilled to a temporary file, and the runs are then merged with a k-way merge
+ * into the output file. When there are more runs than the merge fan-in, groups
+ * of consecutive runs are first merged into larger runs.
+ *
+ * <p>
+ * Records are compared on sort keys, each one a column read as a
+ * {@link ColumnType}: numbers are compared by value and text by its natural
+ * order. Numbers are read as {@link CsvTable} reads them, so {@code NaN},
+ * {@code Infinity} and hexadecimal literals are not numbers while the regional
+ * decimal separator is accepted. Empty fields, missing fields and values that
+ * are not numbers in a numeric key sort last, in ascending as in descending
+ * order. The sort is stable: records with equal keys keep their order in the
+ * input file. The header, if any, is written first. Files are read and
+ * written as UTF-8.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * CsvSorter sorter = new CsvSorter(512L * 1024 * 1024);
+ * sorter.addSortKey("Date", ColumnType.LONG, false);
+ * sorter.addSortKey("Amount", ColumnType.DOUBLE, true);
+ * sorter.setProgressListener((phase, done, total) -&gt; System.out.println(phase + " " + done + "/" + total));
+ * sorter.sort(new File("input.csv"), new File("sorted.csv"));
+ * </pre>
+ * </p>
+ */
+public class CsvSorter {
+
+	private static final Logger logger = LogManager.getLogger(CsvSorter.class);
+
+	/** Default number of runs merged at once. */
+	public static final int DEFAULT_FAN_IN = 64;
+
+	// Number of merged rows between two progress reports.
+	private static final int PROGRESS_INTERVAL = 1 << 20;
+
+	// Estimated heap size of a record and of each of its fields, without the
+	// characters of the fields.
+	private static final int RECORD_OVERHEAD = 96;
+	private static final int FIELD_OVERHEAD = 48;
+
+	/**
+	 * Phases of a sort, as reported to a {@link ProgressListener}.
+	 */
+	public enum Phase {
+		/** Reading the input file into sorted runs, progress counted in bytes. */
+		RUNS,
+		/** Merging the runs, progress counted in rows written by all the passes. */
+		MERGE
+	}
+
+	/**
+	 * Callback receiving the progress of a sort.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+
+		/**
+		 * Reports the progress of a phase, once per spilled run while reading the
+		 * input and periodically while merging, then at the end of each phase.
+		 *
+		 * @param phase the current phase
+		 * @param done  the bytes read or rows written so far in the phase
+		 * @param total the bytes or rows to process in the phase
+		 */
+		void progress(Phase phase, long done, long total);
+	}
+
+	private final long memoryBudget;
+	private final List<SortKey> sortKeys = new ArrayList<>();
+	private char separator = CsvUtils.getSeparator();
+	private boolean hasHeader = true;
+	private File tempDirectory;
+	private int fanIn = DEFAULT_FAN_IN;
+	private ProgressListener progressListener;
+
+	// Columns of the sort keys, resolved when a sort starts.
+	private int[] keyColumns;
+
+	/**
+	 * Creates a sorter keeping runs of the given estimated size in memory.
+	 *
+	 * @param memoryBudget the estimated heap size, in bytes, of the records held
+	 *                     in memory
+	 */
+	public CsvSorter(long memoryBudget) {
+		if (memoryBudget <= 0) {
+			String errorMessage = "The memory budget must be positive: " + memoryBudget;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Adds a sort key on a column, after the keys already added.
+	 *
+	 * @param column     the 0-based index of the column
+	 * @param type       the type the values of the column are compared as
+	 * @param descending whether to sort the values in descending order
+	 */
+	public void addSortKey(int column, ColumnType type, boolean descending) {
+		if (column < 0) {
+			String errorMessage = "The column index must not be negative: " + column;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		addSortKey(new SortKey(column, null, type, descending));
+	}
+
+	/**
+	 * Adds a sort key on a column found by its header, compared after
+	 * normalization as in {@link XlsxUtils#copyRowsToOutputSheet}, after the keys
+	 * already added. The file must have a header.
+	 *
+	 * @param headerName the header of the column
+	 * @param type       the type the values of the column are compared as
+	 * @param descending whether to sort the values in descending order
+	 */
+	public void addSortKey(String headerName, ColumnType type, boolean descending) {
+		addSortKey(new SortKey(-1, headerName, type, descending));
+	}
+
+	/**
+	 * Sets the field separator, the regional separator of {@link CsvUtils} by
+	 * default.
+	 *
+	 * @param separator the field separator
+	 */
+	public void setSeparator(char separator) {
+		this.separator = separator;
+	}
+
+	/**
+	 * Sets whether the first record of the file is a header, kept first. Defaults
+	 * to true.
+	 *
+	 * @param hasHeader whether the file has a header
+	 */
+	public void setHasHeader(boolean hasHeader) {
+		this.hasHeader = hasHeader;
+	}
+
+	/**
+	 * Sets the directory of the temporary run files, the default temporary
+	 * directory if null.
+	 *
+	 * @param tempDirectory the directory of the run files
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Sets the number of runs merged at once, which is the number of run files
+	 * open during a merge. Defaults to {@link #DEFAULT_FAN_IN}.
+	 *
+	 * @param fanIn the number of runs merged at once, at least 2
+	 */
+	public void setFanIn(int fanIn) {
+		if (fanIn < 2) {
+			String errorMessage = "The merge fan-in must be at least 2: " + fanIn;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		this.fanIn = fanIn;
+	}
+
+	/**
+	 * Sets the listener receiving the progress of the sorts.
+	 *
+	 * @param progressListener the listener, or null for none
+	 */
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Sorts a CSV file into another one, replaced if it exists.
+	 *
+	 * @param inputFile  the CSV file to sort
+	 * @param outputFile the sorted CSV file
+	 * @return the number of sorted records, header excluded
+	 * @throws IOException if an I/O error occurs
+	 */
+	public long sort(File inputFile, File outputFile) throws IOException {
+		if (sortKeys.isEmpty()) {
+			String errorMessage = "No sort key to sort " + inputFile;
+			logger.error(errorMessage);
+			throw new IllegalStateException(errorMessage);
+		}
+		long start = System.currentTimeMillis();
+		List<File> runs = new ArrayList<>();
+		try {
+			String[] header = null;
+			List<SortRecord> records = new ArrayList<>();
+			long rowCount = 0;
+			long length = inputFile.length();
+
+			try (CsvParser parser = new CsvParser(inputFile, separator)) {
+				if (hasHeader && parser.next()) {
+					header = readFields(parser);
+				}
+				resolveKeyColumns(header);
+
+				long size = 0;
+				while (parser.next()) {
+					String[] fields = readFields(parser);
+					records.add(newRecord(fields));
+					rowCount++;
+					size += estimateSize(fields);
+					if (size >= memoryBudget) {
+						runs.add(spill(records));
+						records.clear();
+						size = 0;
+						reportProgress(Phase.RUNS, parser.getOffset(), length);
+					}
+				}
+			}
+			reportProgress(Phase.RUNS, length, length);
+
+			if (runs.isEmpty()) {
+				// Everything fits in memory: no run file
+				records.sort(this::compare);
+				try (CsvWriter writer = new CsvWriter(outputFile, StandardCharsets.UTF_8, separator)) {
+					writeHeader(writer, header);
+					for (SortRecord record : records) {
+						writer.writeRow(record.fields);
+					}
+				}
+				reportProgress(Phase.MERGE, rowCount, rowCount);
+			} else {
+				if (!records.isEmpty()) {
+					runs.add(spill(records));
+				}
+				records = null;
+				mergeRuns(runs, header, outputFile, rowCount);
+			}
+			logger.info("Sorted {} rows of {} into {} in {} ms", rowCount, inputFile, outputFile,
+					System.currentTimeMillis() - start);
+			return rowCount;
+		} catch (IOException e) {
+			logger.error("sort - An error occurred while sorting the CSV file: {}", inputFile, e);
+			throw e;
+		} finally {
+			for (File run : runs) {
+				Files.deleteIfExists(run.toPath());
+			}
+		}
+	}
+
+	/**
+	 * Merges the runs into the output file, merging groups of consecutive runs
+	 * first while there are more runs than the fan-in. Merged runs are deleted
+	 * and removed from the list.
+	 *
+	 * @param runs       the run files, in input order
+	 * @param header     the header, or null
+	 * @param outputFile the sorted CSV file
+	 * @param rowCount   the number of records
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void mergeRuns(List<File> runs, String[] header, File outputFile, long rowCount) throws IOException {
+		int passes = 1;
+		for (int count = runs.size(); count > fanIn; count = (count + fanIn - 1) / fanIn) {
+			passes++;
+		}
+		long total = rowCount * passes;
+		long done = 0;
+
+		while (runs.size() > fanIn) {
+			List<File> mergedRuns = new ArrayList<>();
+			for (int i = 0; i < runs.size(); i += fanIn) {
+				mergedRuns.add(newRunFile());
+			}
+			// Merged runs added at once, so that they are all deleted on failure
+			List<File> pass = new ArrayList<>(runs);
+			runs.addAll(mergedRuns);
+			for (int i = 0, m = 0; i < pass.size(); i += fanIn, m++) {
+				List<File> group = pass.subList(i, Math.min(i + fanIn, pass.size()));
+				try (CsvWriter writer = newRunWriter(mergedRuns.get(m))) {
+					done = merge(group, writer, done, total);
+				}
+				for (File run : group) {
+					Files.deleteIfExists(run.toPath());
+				}
+			}
+			runs.removeAll(pass);
+		}
+
+		try (CsvWriter writer = new CsvWriter(outputFile, StandardCharsets.UTF_8, separator)) {
+			writeHeader(writer, header);
+			merge(runs, writer, done, total);
+		}
+		reportProgress(Phase.MERGE, total, total);
+	}
+
+	/**
+	 * Merges sorted runs with a priority queue holding the current record of
+	 * each run, ties going to the earlier run.
+	 *
+	 * @param runs   the run files, in input order
+	 * @param writer the writer of the merged records
+	 * @param done   the rows written so far in the merge phase
+	 * @param total  the rows to write in the merge phase
+	 * @return the rows written so far in the merge phase
+	 * @throws IOException if an I/O error occurs
+	 */
+	private long merge(List<File> runs, CsvWriter writer, long done, long total) throws IOException {
+		List<RunReader> readers = new ArrayList<>(runs.size());
+		try {
+			PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(), (a, b) -> {
+				int result = compare(a.current, b.current);
+				return result != 0 ? result : Integer.compare(a.index, b.index);
+			});
+			for (File run : runs) {
+				RunReader reader = new RunReader(new CsvParser(run, separator), readers.size());
+				readers.add(reader);
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				writer.writeRow(reader.current.fields);
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+				if (++done % PROGRESS_INTERVAL == 0) {
+					reportProgress(Phase.MERGE, done, total);
+				}
+			}
+			return done;
+		} finally {
+			for (RunReader reader : readers) {
+				reader.parser.close();
+			}
+		}
+	}
+
+	/**
+	 * Sorts records and writes them to a new run file.
+	 *
+	 * @param records the records
+	 * @return the run file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private File spill(List<SortRecord> records) throws IOException {
+		records.sort(this::compare);
+		File run = newRunFile();
+		try (CsvWriter writer = newRunWriter(run)) {
+			for (SortRecord record : records) {
+				writer.writeRow(record.fields);
+			}
+		}
+		logger.debug("Spilled a run of {} rows to {}", records.size(), run);
+		return run;
+	}
+
+	/**
+	 * @return a new empty run file in the temporary directory
+	 * @throws IOException if the file cannot be created
+	 */
+	private File newRunFile() throws IOException {
+		return (tempDirectory != null ? Files.createTempFile(tempDirectory.toPath(), "csvsort", ".csv")
+				: Files.createTempFile("csvsort", ".csv")).toFile();
+	}
+
+	/**
+	 * Opens a writer on a run file, ending the rows with a line feed.
+	 *
+	 * @param run the run file
+	 * @return the writer
+	 * @throws IOException if the file cannot be opened
+	 */
+	private CsvWriter newRunWriter(File run) throws IOException {
+		CsvWriter writer = new CsvWriter(run, StandardCharsets.UTF_8, separator);
+		writer.setLineSeparator("\n");
+		return writer;
+	}
+
+	/**
+	 * Writes the header, if any.
+	 *
+	 * @param writer the writer
+	 * @param header the header, or null
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void writeHeader(CsvWriter writer, String[] header) throws IOException {
+		if (header != null) {
+			writer.writeRow(header);
+		}
+	}
+
+	/**
+	 * Adds a sort key, checking its type.
+	 *
+	 * @param sortKey the sort key
+	 */
+	private void addSortKey(SortKey sortKey) {
+		if (sortKey.type == null) {
+			String errorMessage = "The type of a sort key must not be null";
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		if (sortKeys.size() == Long.SIZE) {
+			String errorMessage = "Too many sort keys, at most " + Long.SIZE;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		sortKeys.add(sortKey);
+	}
+
+	/**
+	 * Resolves the columns of the sort keys, finding the columns given by header.
+	 *
+	 * @param header the header of the file, or null
+	 */
+	private void resolveKeyColumns(String[] header) {
+		Map<String, Integer> headerIndex = new HashMap<>();
+		if (header != null) {
+			for (int i = 0; i < header.length; i++) {
+				headerIndex.putIfAbsent(XlsxUtils.normalizeHeaderName(header[i]), i);
+			}
+		}
+		keyColumns = new int[sortKeys.size()];
+		for (int k = 0; k < keyColumns.length; k++) {
+			SortKey sortKey = sortKeys.get(k);
+			if (sortKey.headerName == null) {
+				keyColumns[k] = sortKey.column;
+				continue;
+			}
+			Integer column = headerIndex.get(XlsxUtils.normalizeHeaderName(sortKey.headerName));
+			if (column == null) {
+				String errorMessage = "Sort column not found in the header: " + sortKey.headerName;
+				logger.error(errorMessage);
+				throw new IllegalArgumentException(errorMessage);
+			}
+			keyColumns[k] = column;
+		}
+	}
+
+	/**
+	 * Creates a record, parsing the values of its numeric keys.
+	 *
+	 * @param fields the fields of the record
+	 * @return the record
+	 */
+	private SortRecord newRecord(String[] fields) {
+		SortRecord record = new SortRecord(fields, sortKeys.size());
+		for (int k = 0; k < keyColumns.length; k++) {
+			int column = keyColumns[k];
+			String text = column < fields.length ? fields[column].trim() : "";
+			if (text.isEmpty()) {
+				record.nulls |= 1L << k;
+				continue;
+			}
+			switch (sortKeys.get(k).type) {
+			case INT:
+			case LONG:
+				if (CsvNumbers.isInteger(text)) {
+					record.numbers[k] = Long.parseLong(text);
+				} else {
+					record.nulls |= 1L << k;
+				}
+				break;
+			case DOUBLE:
+				if (CsvNumbers.isDecimal(text)) {
+					record.numbers[k] = Double.doubleToRawLongBits(CsvNumbers.parseDecimal(text));
+				} else {
+					record.nulls |= 1L << k;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * Compares two records on the sort keys, empty values last.
+	 *
+	 * @param a the first record
+	 * @param b the second record
+	 * @return a negative number, zero or a positive number if the first record
+	 *         sorts before, with or after the second one
+	 */
+	private int compare(SortRecord a, SortRecord b) {
+		for (int k = 0; k < keyColumns.length; k++) {
+			boolean aNull = (a.nulls & (1L << k)) != 0;
+			boolean bNull = (b.nulls & (1L << k)) != 0;
+			if (aNull || bNull) {
+				if (aNull != bNull) {
+					return aNull ? 1 : -1;
+				}
+				continue;
+			}
+			SortKey sortKey = sortKeys.get(k);
+			int result;
+			switch (sortKey.type) {
+			case INT:
+			case LONG:
+				result = Long.compare(a.numbers[k], b.numbers[k]);
+				break;
+			case DOUBLE:
+				result = Double.compare(Double.longBitsToDouble(a.numbers[k]), Double.longBitsToDouble(b.numbers[k]));
+				break;
+			default:
+				result = a.fields[keyColumns[k]].compareTo(b.fields[keyColumns[k]]);
+				break;
+			}
+			if (result != 0) {
+				return sortKey.descending ? -result : result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Reports progress to the listener, if any.
+	 *
+	 * @param phase the current phase
+	 * @param done  the bytes read or rows written so far in the phase
+	 * @param total the bytes or rows to process in the phase
+	 */
+	private void reportProgress(Phase phase, long done, long total) {
+		if (progressListener != null) {
+			progressListener.progress(phase, done, total);
+		}
+	}
+
+	/**
+	 * Decodes the fields of the current record of a parser.
+	 *
+	 * @param parser the parser
+	 * @return the fields of the record
+	 */
+	private static String[] readFields(CsvParser parser) {
+		String[] fields = new String[parser.getFieldCount()];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = parser.getField(i);
+		}
+		return fields;
+	}
+
+	/**
+	 * Estimates the heap size of a record.
+	 *
+	 * @param fields the fields of the record
+	 * @return the estimated size in bytes
+	 */
+	private long estimateSize(String[] fields) {
+		long size = RECORD_OVERHEAD + 8L * keyColumns.length;
+		for (String field : fields) {
+			size += FIELD_OVERHEAD + 2L * field.length();
+		}
+		return size;
+	}
+
+	/**
+	 * A sort key: a column, given by index or by header, and how to compare it.
+	 */
+	private static class SortKey {
+
+		private final int column;
+		private final String headerName;
+		private final ColumnType type;
+		private final boolean descending;
+
+		SortKey(int column, String headerName, ColumnType type, boolean descending) {
+			this.column = column;
+			this.headerName = headerName;
+			this.type = type;
+			this.descending = descending;
+		}
+	}
+
+	/**
+	 * A record with the parsed values of its numeric keys.
+	 */
+	private static class SortRecord {
+
+		private final String[] fields;
+
+		// Values of the numeric keys, the bits of the doubles for DOUBLE keys.
+		private final long[] numbers;
+
+		// Bit k set when the value of key k is empty, missing or not a number.
+		private long nulls;
+
+		SortRecord(String[] fields, int keyCount) {
+			this.fields = fields;
+			this.numbers = new long[keyCount];
+		}
+	}
+
+	/**
+	 * Reader of a run file, holding its current record.
+	 */
+	private class RunReader {
+
+		private final CsvParser parser;
+		private final int index;
+		private SortRecord current;
+
+		RunReader(CsvParser parser, int index) {
+			this.parser = parser;
+			this.index = index;
+		}
+
+		/**
+		 * Reads the next record of the run.
+		 *
+		 * @return true if a record was read, false at the end of the run
+		 * @throws IOException if an I/O error occurs
+		 */
+		boolean advance() throws IOException {
+			current = parser.next() ? newRecord(readFields(parser)) : null;
+			return current != null;
+		}
+	}
+}
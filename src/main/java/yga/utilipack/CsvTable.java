@@ -0,0 +1,587 @@
+package yga.utilipack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Columnar table of CSV values with typed columns, replacing the lists of
+ * strings passed to {@link CsvUtils#readInputFile(String, List...)} and
+ * {@link CsvUtils#writeOutput(String, List...)}. The header is kept apart from
+ * the values, so adding it does not shift the columns.
+ *
+ * <p>
+ * Each column starts as an {@code int} column and is widened when a value does
+ * not fit: to {@code long}, to {@code double} for decimal numbers, or to text
+ * for values which are not finite numbers. Any number written with an optional
+ * sign, digits, an optional decimal point and an optional exponent is stored as
+ * such, the decimal point being a dot or the regional decimal separator, as
+ * checked by {@link CsvNumbers}; the text of the numbers which would not be printed back as read, such
+ * as {@code 007} or {@code 2.50}, is kept beside them, so a table written back
+ * gives the text it was read from. Text columns are dictionary-encoded while
+ * they hold at most {@link #MAX_DICTIONARY_SIZE} distinct values, then store
+ * plain strings. Empty values of numeric columns are stored as nulls.
+ * </p>
+ *
+ * <p>
+ * A million rows of a numeric column take 4 or 8 MB, instead of a million
+ * strings.
+ * </p>
+ */
+public class CsvTable {
+
+	private static final Logger logger = LogManager.getLogger(CsvTable.class);
+
+	/** Maximum number of distinct values of a dictionary-encoded text column. */
+	public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+
+	/**
+	 * Type of the values of a column.
+	 */
+	public enum ColumnType {
+		INT, LONG, DOUBLE, STRING
+	}
+
+	private String[] header;
+	private final List<Column> columns = new ArrayList<>();
+	private int rowCount = 0;
+
+	/**
+	 * Creates an empty table without header.
+	 */
+	public CsvTable() {
+		this.header = new String[0];
+	}
+
+	/**
+	 * Creates an empty table with a header.
+	 *
+	 * @param header the names of the columns
+	 */
+	public CsvTable(String... header) {
+		setHeader(header);
+	}
+
+	/**
+	 * Sets the header of the table, without moving any value.
+	 *
+	 * @param header the names of the columns
+	 */
+	public void setHeader(String... header) {
+		this.header = Arrays.copyOf(header, header.length);
+		ensureColumnCount(header.length);
+	}
+
+	/**
+	 * @return a copy of the names of the columns, empty if the table has no header
+	 */
+	public String[] getHeader() {
+		return Arrays.copyOf(header, header.length);
+	}
+
+	/**
+	 * Retrieves the index of a column from its header, compared after
+	 * normalization as in {@link XlsxUtils#copyRowsToOutputSheet}.
+	 *
+	 * @param headerName the name of the column
+	 * @return the 0-based index of the column, or -1 if not found
+	 */
+	public int getColumnIndex(String headerName) {
+		String normalizedName = XlsxUtils.normalizeHeaderName(headerName);
+		for (int i = 0; i < header.length; i++) {
+			if (header[i] != null && XlsxUtils.normalizeHeaderName(header[i]).equals(normalizedName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of rows of the table, header excluded
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of columns of the table
+	 */
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Retrieves the type of a column.
+	 *
+	 * @param column the 0-based index of the column
+	 * @return the type of the column
+	 */
+	public ColumnType getColumnType(int column) {
+		return columns.get(column).type;
+	}
+
+	/**
+	 * Appends a row of text values, widening the columns the values do not fit
+	 * in. Missing values are empty, and extra values add columns.
+	 *
+	 * @param values the values of the row
+	 */
+	public void addRow(String... values) {
+		ensureColumnCount(values.length);
+		for (int i = 0; i < columns.size(); i++) {
+			columns.get(i).add(i < values.length && values[i] != null ? values[i] : "");
+		}
+		rowCount++;
+	}
+
+	/**
+	 * Checks if a value is null, meaning empty in a numeric column.
+	 *
+	 * @param row    the 0-based index of the row
+	 * @param column the 0-based index of the column
+	 * @return true if the value is null, false otherwise
+	 */
+	public boolean isNull(int row, int column) {
+		return columns.get(column).nulls.get(checkRow(row));
+	}
+
+	/**
+	 * Retrieves a value of an {@code int} column.
+	 *
+	 * @param row    the 0-based index of the row
+	 * @param column the 0-based index of the column
+	 * @return the value, 0 if null
+	 */
+	public int getInt(int row, int column) {
+		Column values = columns.get(column);
+		if (values.type != ColumnType.INT) {
+			throw wrongType(column, ColumnType.INT);
+		}
+		return values.ints[checkRow(row)];
+	}
+
+	/**
+	 * Retrieves a value of an {@code int} or {@code long} column.
+	 *
+	 * @param row    the 0-based index of the row
+	 * @param column the 0-based index of the column
+	 * @return the value, 0 if null
+	 */
+	public long getLong(int row, int column) {
+		Column values = columns.get(column);
+		switch (values.type) {
+		case INT:
+			return values.ints[checkRow(row)];
+		case LONG:
+			return values.longs[checkRow(row)];
+		default:
+			throw wrongType(column, ColumnType.LONG);
+		}
+	}
+
+	/**
+	 * Retrieves a value of a numeric column.
+	 *
+	 * @param row    the 0-based index of the row
+	 * @param column the 0-based index of the column
+	 * @return the value, 0 if null
+	 */
+	public double getDouble(int row, int column) {
+		Column values = columns.get(column);
+		switch (values.type) {
+		case INT:
+			return values.ints[checkRow(row)];
+		case LONG:
+			return values.longs[checkRow(row)];
+		case DOUBLE:
+			return values.doubles[checkRow(row)];
+		default:
+			throw wrongType(column, ColumnType.DOUBLE);
+		}
+	}
+
+	/**
+	 * Retrieves a value of any column as text, as it was read.
+	 *
+	 * @param row    the 0-based index of the row
+	 * @param column the 0-based index of the column
+	 * @return the text of the value, empty if null
+	 */
+	public String getString(int row, int column) {
+		return columns.get(column).getString(checkRow(row));
+	}
+
+	@Override
+	public String toString() {
+		return "CsvTable [columns=" + columns.size() + ", rows=" + rowCount + "]";
+	}
+
+	/**
+	 * Adds empty columns up to the given count, filled with nulls for the rows
+	 * already added.
+	 *
+	 * @param columnCount the number of columns wanted
+	 */
+	private void ensureColumnCount(int columnCount) {
+		while (columns.size() < columnCount) {
+			Column column = new Column(Math.max(INITIAL_CAPACITY, rowCount));
+			for (int i = 0; i < rowCount; i++) {
+				column.add("");
+			}
+			columns.add(column);
+		}
+	}
+
+	/**
+	 * Checks that a row index is within the table.
+	 *
+	 * @param row the 0-based index of the row
+	 * @return the row index
+	 */
+	private int checkRow(int row) {
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Row " + row + " out of " + rowCount + " rows");
+		}
+		return row;
+	}
+
+	/**
+	 * Builds the exception thrown when a column is read with the wrong type.
+	 *
+	 * @param column   the 0-based index of the column
+	 * @param expected the type expected by the caller
+	 * @return the exception
+	 */
+	private IllegalStateException wrongType(int column, ColumnType expected) {
+		String errorMessage = "Column " + column + " is of type " + columns.get(column).type + ", not " + expected;
+		logger.error(errorMessage);
+		return new IllegalStateException(errorMessage);
+	}
+
+	/**
+	 * The values of a column, stored in the array matching its type.
+	 */
+	private static class Column {
+
+		private ColumnType type = ColumnType.INT;
+		private int size = 0;
+		private final BitSet nulls = new BitSet();
+
+		private int[] ints;
+		private long[] longs;
+		private double[] doubles;
+
+		// Dictionary-encoded text: the code of each value and the distinct values.
+		private int[] codes;
+		private List<String> dictionary;
+		private Map<String, Integer> dictionaryIndex;
+
+		// Plain text, once the dictionary is too large.
+		private String[] strings;
+
+		// Text of the numbers not printed back as read, null for the others, and
+		// null until the first one.
+		private String[] texts;
+
+		Column(int capacity) {
+			this.ints = new int[capacity];
+		}
+
+		/**
+		 * Appends a value, widening the column if needed.
+		 *
+		 * @param text the text of the value
+		 */
+		void add(String text) {
+			if (type != ColumnType.STRING && text.isEmpty()) {
+				addNull();
+				return;
+			}
+			switch (type) {
+			case INT:
+				if (CsvNumbers.isInteger(text)) {
+					long value = Long.parseLong(text);
+					if (value == (int) value) {
+						ints = grow(ints);
+						setText(Integer.toString((int) value), text);
+						ints[size++] = (int) value;
+						return;
+					}
+					toLongs();
+				} else if (CsvNumbers.isDecimal(text)) {
+					toDoubles();
+				} else {
+					toStrings();
+				}
+				add(text);
+				return;
+			case LONG:
+				if (CsvNumbers.isInteger(text)) {
+					longs = grow(longs);
+					long value = Long.parseLong(text);
+					setText(Long.toString(value), text);
+					longs[size++] = value;
+					return;
+				}
+				if (CsvNumbers.isDecimal(text)) {
+					toDoubles();
+				} else {
+					toStrings();
+				}
+				add(text);
+				return;
+			case DOUBLE:
+				if (CsvNumbers.isDecimal(text)) {
+					doubles = grow(doubles);
+					double value = CsvNumbers.parseDecimal(text);
+					setText(formatDouble(value), text);
+					doubles[size++] = value;
+					return;
+				}
+				toStrings();
+				add(text);
+				return;
+			default:
+				addString(text);
+			}
+		}
+
+		/**
+		 * Retrieves a value as text.
+		 *
+		 * @param row the 0-based index of the row
+		 * @return the text of the value
+		 */
+		String getString(int row) {
+			if (type != ColumnType.STRING && nulls.get(row)) {
+				return "";
+			}
+			if (texts != null && row < texts.length && texts[row] != null) {
+				return texts[row];
+			}
+			switch (type) {
+			case INT:
+				return Integer.toString(ints[row]);
+			case LONG:
+				return Long.toString(longs[row]);
+			case DOUBLE:
+				return formatDouble(doubles[row]);
+			default:
+				return strings != null ? strings[row] : dictionary.get(codes[row]);
+			}
+		}
+
+		/**
+		 * Keeps the text of the number being appended if it is not the one printed
+		 * for its value.
+		 *
+		 * @param printed the text printed for the value
+		 * @param text    the text read
+		 */
+		private void setText(String printed, String text) {
+			if (printed.equals(text)) {
+				return;
+			}
+			if (texts == null) {
+				texts = new String[Math.max(INITIAL_CAPACITY, size + 1)];
+			} else {
+				texts = grow(texts);
+			}
+			texts[size] = text;
+		}
+
+		/**
+		 * Appends a null value to a numeric column.
+		 */
+		private void addNull() {
+			nulls.set(size);
+			switch (type) {
+			case INT:
+				ints = grow(ints);
+				break;
+			case LONG:
+				longs = grow(longs);
+				break;
+			default:
+				doubles = grow(doubles);
+				break;
+			}
+			size++;
+		}
+
+		/**
+		 * Appends a value to a text column.
+		 *
+		 * @param text the value
+		 */
+		private void addString(String text) {
+			if (strings != null) {
+				strings = grow(strings);
+				strings[size++] = text;
+				return;
+			}
+			Integer code = dictionaryIndex.get(text);
+			if (code == null) {
+				if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+					toPlainStrings();
+					addString(text);
+					return;
+				}
+				code = dictionary.size();
+				dictionary.add(text);
+				dictionaryIndex.put(text, code);
+			}
+			codes = grow(codes);
+			codes[size++] = code;
+		}
+
+		/**
+		 * Widens an {@code int} column to {@code long}.
+		 */
+		private void toLongs() {
+			longs = new long[ints.length];
+			for (int i = 0; i < size; i++) {
+				longs[i] = ints[i];
+			}
+			ints = null;
+			type = ColumnType.LONG;
+		}
+
+		/**
+		 * Widens an {@code int} or {@code long} column to {@code double}, keeping the
+		 * text of the values printed differently as doubles, such as the longs a
+		 * double cannot hold exactly.
+		 */
+		private void toDoubles() {
+			String[] values = new String[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = nulls.get(i) ? null : getString(i);
+			}
+			doubles = new double[type == ColumnType.INT ? ints.length : longs.length];
+			int count = size;
+			size = 0;
+			texts = null;
+			for (int i = 0; i < count; i++) {
+				if (values[i] != null) {
+					doubles[i] = type == ColumnType.INT ? ints[i] : longs[i];
+					setText(formatDouble(doubles[i]), values[i]);
+				}
+				size++;
+			}
+			ints = null;
+			longs = null;
+			type = ColumnType.DOUBLE;
+		}
+
+		/**
+		 * Turns a numeric column into a dictionary-encoded text column.
+		 */
+		private void toStrings() {
+			String[] values = new String[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = getString(i);
+			}
+			ints = null;
+			longs = null;
+			doubles = null;
+			texts = null;
+			nulls.clear();
+			type = ColumnType.STRING;
+			codes = new int[Math.max(INITIAL_CAPACITY, size)];
+			dictionary = new ArrayList<>();
+			dictionaryIndex = new HashMap<>();
+			size = 0;
+			for (String value : values) {
+				addString(value);
+			}
+		}
+
+		/**
+		 * Replaces the dictionary of a text column by plain strings.
+		 */
+		private void toPlainStrings() {
+			strings = new String[codes.length];
+			for (int i = 0; i < size; i++) {
+				strings[i] = dictionary.get(codes[i]);
+			}
+			codes = null;
+			dictionary = null;
+			dictionaryIndex = null;
+		}
+
+		/**
+		 * Prints a value of a {@code double} column: without decimal part when it
+		 * is an integer a {@code long} prints exactly, as Java prints a
+		 * {@code double} otherwise, with the regional decimal separator.
+		 *
+		 * @param value the value
+		 * @return the text of the value
+		 */
+		private static String formatDouble(double value) {
+			if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+				return Long.toString((long) value);
+			}
+			String text = Double.toString(value);
+			return CsvNumbers.DECIMAL_SEPARATOR == '.' ? text : text.replace('.', CsvNumbers.DECIMAL_SEPARATOR);
+		}
+
+		/**
+		 * Makes room for one more value at the end of an array.
+		 *
+		 * @param array the array holding the values of the column
+		 * @return the array, or a larger copy if it is full
+		 */
+		private int[] grow(int[] array) {
+			return size < array.length ? array : Arrays.copyOf(array, newCapacity());
+		}
+
+		/**
+		 * Makes room for one more value at the end of an array.
+		 *
+		 * @param array the array holding the values of the column
+		 * @return the array, or a larger copy if it is full
+		 */
+		private long[] grow(long[] array) {
+			return size < array.length ? array : Arrays.copyOf(array, newCapacity());
+		}
+
+		/**
+		 * Makes room for one more value at the end of an array.
+		 *
+		 * @param array the array holding the values of the column
+		 * @return the array, or a larger copy if it is full
+		 */
+		private double[] grow(double[] array) {
+			return size < array.length ? array : Arrays.copyOf(array, newCapacity());
+		}
+
+		/**
+		 * Makes room for one more value at the end of an array.
+		 *
+		 * @param array the array holding the values of the column
+		 * @return the array, or a larger copy if it is full
+		 */
+		private String[] grow(String[] array) {
+			return size < array.length ? array : Arrays.copyOf(array, newCapacity());
+		}
+
+		/**
+		 * @return the capacity of a full array once grown
+		 */
+		private int newCapacity() {
+			if (size >= Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("Too many rows in the column: " + size);
+			}
+			return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(INITIAL_CAPACITY, size + (size >> 1) + 1L));
+		}
+	}
+}
@@ -1,14 +1,41 @@
 package yga.utilipack;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,13 +43,36 @@ import org.apache.logging.log4j.Logger;
 /**
  * Utility class for handling CSV file operations such as reading, writing, and
  * adding headers.
+ *
+ * <p>
+ * Compressed files are read and written on the fly, without temporary files:
+ * files starting with the gzip magic number are read as gzip, files named
+ * {@code .deflate} as raw deflate streams, and files are written compressed the
+ * same way when named {@code .gz} or {@code .deflate}. Compressed files cannot
+ * be split, so they are always parsed sequentially.
+ * </p>
  */
 public class CsvUtils {
 
 	static Logger logger = LogManager.getLogger(CsvUtils.class);
 
+	/** Size of the buffers of the compressed streams and of the background reads. */
+	public static final int COMPRESSED_BUFFER_SIZE = 1 << 18;
+
+	// Number of decompressed buffers a background read can hold ahead.
+	private static final int BACKGROUND_BUFFERS = 4;
+
 	private static char separator = getRegionalSeparator();
 
+	private static boolean backgroundDecompression = false;
+
+	/**
+	 * Compression of a CSV file.
+	 */
+	private enum Compression {
+		NONE, GZIP, DEFLATE
+	}
+
 	/**
 	 * Retrieves the regional CSV separator used in the system.
 	 *
@@ -33,19 +83,116 @@ public class CsvUtils {
 	}
 
 	/**
-	 * Reads a CSV file and splits its content into provided lists.
+	 * Sets whether compressed files are decompressed on a separate thread, ahead
+	 * of the parsing. Defaults to false.
+	 *
+	 * @param backgroundDecompression whether to decompress in the background
+	 */
+	public static void setBackgroundDecompression(boolean backgroundDecompression) {
+		CsvUtils.backgroundDecompression = backgroundDecompression;
+	}
+
+	/**
+	 * Opens a CSV file for reading, decompressing it if it is compressed.
+	 *
+	 * @param csvFile                 the path to the CSV file
+	 * @param backgroundDecompression whether to decompress on a separate thread
+	 * @return the input stream of the uncompressed content
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static InputStream openInput(String csvFile, boolean backgroundDecompression) throws IOException {
+		File file = new File(csvFile);
+		Compression compression = getCompression(file);
+		InputStream input = new FileInputStream(file);
+		try {
+			switch (compression) {
+			case GZIP:
+				input = new GZIPInputStream(input, COMPRESSED_BUFFER_SIZE);
+				break;
+			case DEFLATE:
+				input = new InflaterInputStream(input, new Inflater(true), COMPRESSED_BUFFER_SIZE) {
+					@Override
+					public void close() throws IOException {
+						super.close();
+						inf.end();
+					}
+				};
+				break;
+			default:
+				return input;
+			}
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+		return backgroundDecompression ? new BackgroundInputStream(input, csvFile) : input;
+	}
+
+	/**
+	 * Opens a CSV file for writing, replacing it if it exists, compressed with
+	 * gzip if it is named {@code .gz} and with raw deflate if it is named
+	 * {@code .deflate}.
+	 *
+	 * @param csvFile the path to the CSV file
+	 * @return the output stream of the uncompressed content
+	 * @throws IOException if the file cannot be created
+	 */
+	public static OutputStream openOutput(String csvFile) throws IOException {
+		OutputStream output = new FileOutputStream(csvFile);
+		try {
+			switch (getOutputCompression(csvFile)) {
+			case GZIP:
+				return new GZIPOutputStream(output, COMPRESSED_BUFFER_SIZE);
+			case DEFLATE:
+				return new DeflaterOutputStream(output, new Deflater(Deflater.DEFAULT_COMPRESSION, true),
+						COMPRESSED_BUFFER_SIZE) {
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							def.end();
+						}
+					}
+				};
+			default:
+				return output;
+			}
+		} catch (IOException e) {
+			output.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads a CSV file and splits its content into provided lists. The file is
+	 * parsed with a {@link CsvParser}, so quoted fields may contain the separator,
+	 * and only the fields stored in a list are decoded. The file is read as
+	 * UTF-8.
 	 *
 	 * @param csvFile the path to the CSV file
 	 * @param lists   the lists to store the values from each column
 	 */
 	@SafeVarargs
 	public static void readInputFile(String csvFile, List<String>... lists) {
-		try (BufferedReader br = new BufferedReader(new FileReader(csvFile))) {
-			String line;
-			while ((line = br.readLine()) != null) {
-				String[] values = line.split(String.valueOf(separator));
-				for (int i = 0; i < Math.min(values.length, lists.length); i++) {
-					lists[i].add(values[i].trim());
+		readInputFile(csvFile, StandardCharsets.UTF_8, lists);
+	}
+
+	/**
+	 * Reads a CSV file in the specified charset and splits its content into
+	 * provided lists, as by {@link #readInputFile(String, List...)}.
+	 *
+	 * @param csvFile the path to the CSV file
+	 * @param charset the charset of the file, encoding ASCII as ASCII, such as
+	 *                windows-1252 for the exports of a regional Excel
+	 * @param lists   the lists to store the values from each column
+	 */
+	@SafeVarargs
+	public static void readInputFile(String csvFile, Charset charset, List<String>... lists) {
+		try (CsvParser parser = openParser(new File(csvFile), charset)) {
+			while (parser.next()) {
+				for (int i = 0; i < Math.min(parser.getFieldCount(), lists.length); i++) {
+					lists[i].add(parser.getField(i).trim());
 				}
 			}
 		} catch (IOException e) {
@@ -53,6 +200,368 @@ public class CsvUtils {
 		}
 	}
 
+	/**
+	 * Reads a CSV file and splits its content into provided lists, parsing parts
+	 * of the file in parallel. The file is split into ranges starting on record
+	 * boundaries with {@link CsvParser#splitRecords(File, char, int, ForkJoinPool)},
+	 * each range is parsed on a fork-join pool into its own columns, and the
+	 * columns are appended to the lists in file order, so the lists end up as
+	 * with {@link #readInputFile(String, List...)}. Compressed files are read
+	 * sequentially.
+	 *
+	 * @param csvFile     the path to the CSV file
+	 * @param parallelism the number of threads parsing the file
+	 * @param lists       the lists to store the values from each column
+	 */
+	@SafeVarargs
+	public static void readInputFile(String csvFile, int parallelism, List<String>... lists) {
+		readInputFile(csvFile, StandardCharsets.UTF_8, parallelism, lists);
+	}
+
+	/**
+	 * Reads a CSV file in the specified charset and splits its content into
+	 * provided lists, parsing parts of the file in parallel, as by
+	 * {@link #readInputFile(String, int, List...)}.
+	 *
+	 * @param csvFile     the path to the CSV file
+	 * @param charset     the charset of the file, encoding ASCII as ASCII
+	 * @param parallelism the number of threads parsing the file
+	 * @param lists       the lists to store the values from each column
+	 */
+	@SafeVarargs
+	public static void readInputFile(String csvFile, Charset charset, int parallelism, List<String>... lists) {
+		File file = new File(csvFile);
+		try {
+			if (getCompression(file) != Compression.NONE) {
+				readInputFile(csvFile, charset, lists);
+				return;
+			}
+		} catch (IOException e) {
+			logger.error("readInputFile - An error occurred while reading the CSV file: {}", csvFile, e);
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			long[] bounds = CsvParser.splitRecords(file, separator, Math.max(1, parallelism) * 4, pool);
+			List<ForkJoinTask<List<List<String>>>> tasks = new ArrayList<>();
+			for (int i = 0; i < bounds.length - 1; i++) {
+				long start = bounds[i];
+				long end = bounds[i + 1];
+				tasks.add(pool.submit(() -> readRange(file, charset, start, end, lists.length)));
+			}
+			for (ForkJoinTask<List<List<String>>> task : tasks) {
+				List<List<String>> columns = task.join();
+				for (int i = 0; i < lists.length; i++) {
+					lists[i].addAll(columns.get(i));
+				}
+			}
+		} catch (IOException | UncheckedIOException e) {
+			logger.error("readInputFile - An error occurred while reading the CSV file: {}", csvFile, e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads the records of a range of a CSV file into columns.
+	 *
+	 * @param file        the CSV file
+	 * @param charset     the charset of the file
+	 * @param start       the offset of the first record of the range
+	 * @param end         the offset of the end of the range
+	 * @param columnCount the number of columns to read
+	 * @return the values of each column
+	 */
+	private static List<List<String>> readRange(File file, Charset charset, long start, long end,
+			int columnCount) {
+		List<List<String>> columns = new ArrayList<>(columnCount);
+		for (int i = 0; i < columnCount; i++) {
+			columns.add(new ArrayList<String>());
+		}
+		try (CsvParser parser = new CsvParser(file, separator, start, end)) {
+			parser.setCharset(charset);
+			while (parser.next()) {
+				for (int i = 0; i < Math.min(parser.getFieldCount(), columnCount); i++) {
+					columns.get(i).add(parser.getField(i).trim());
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return columns;
+	}
+
+	/**
+	 * Streams the records of a CSV file as {@link CsvRow} views, without loading
+	 * the file: memory does not depend on its size. The rows are flyweights
+	 * reused for every record, to be read before the next one. A parallel stream
+	 * splits the file into byte ranges starting on record boundaries, found with
+	 * {@link CsvParser#splitRecords(File, char, int, ForkJoinPool)} on the first split,
+	 * and parses each range with its own parser; compressed files are streamed
+	 * sequentially. The stream should be closed to release the file, such as with
+	 * a try-with-resources statement. The file is read as UTF-8.
+	 *
+	 * @param csvFile   the path to the CSV file
+	 * @param hasHeader whether the first record is the header of the columns, used
+	 *                  by {@link CsvRow#get(String)} and not streamed
+	 * @return the stream of the records
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Stream<CsvRow> streamRows(String csvFile, boolean hasHeader) throws IOException {
+		return streamRows(csvFile, StandardCharsets.UTF_8, hasHeader);
+	}
+
+	/**
+	 * Streams the records of a CSV file in the specified charset, as by
+	 * {@link #streamRows(String, boolean)}.
+	 *
+	 * @param csvFile   the path to the CSV file
+	 * @param charset   the charset of the file, encoding ASCII as ASCII
+	 * @param hasHeader whether the first record is the header of the columns, used
+	 *                  by {@link CsvRow#get(String)} and not streamed
+	 * @return the stream of the records
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Stream<CsvRow> streamRows(String csvFile, Charset charset, boolean hasHeader) throws IOException {
+		File file = new File(csvFile);
+		if (getCompression(file) != Compression.NONE) {
+			return streamCompressedRows(file, charset, hasHeader);
+		}
+		Map<String, Integer> headerIndex = new HashMap<>();
+		long dataStart = 0;
+		if (hasHeader) {
+			try (CsvParser parser = new CsvParser(file, separator)) {
+				parser.setCharset(charset);
+				if (parser.next()) {
+					for (int i = 0; i < parser.getFieldCount(); i++) {
+						headerIndex.put(XlsxUtils.normalizeHeaderName(parser.getField(i)), i);
+					}
+				}
+				dataStart = parser.getOffset();
+			}
+		}
+		RowSource source = new RowSource(file, charset, headerIndex, dataStart);
+		return StreamSupport.stream(new RowSpliterator(source, dataStart, file.length()), false)
+				.onClose(source::close);
+	}
+
+	/**
+	 * Streams the records of a compressed CSV file, sequentially, for
+	 * {@link #streamRows(String, Charset, boolean)}.
+	 *
+	 * @param file      the compressed CSV file
+	 * @param charset   the charset of the file
+	 * @param hasHeader whether the first record is the header of the columns
+	 * @return the stream of the records
+	 * @throws IOException if the file cannot be read
+	 */
+	private static Stream<CsvRow> streamCompressedRows(File file, Charset charset, boolean hasHeader)
+			throws IOException {
+		CsvParser parser = openParser(file, charset);
+		Map<String, Integer> headerIndex = new HashMap<>();
+		try {
+			if (hasHeader && parser.next()) {
+				for (int i = 0; i < parser.getFieldCount(); i++) {
+					headerIndex.put(XlsxUtils.normalizeHeaderName(parser.getField(i)), i);
+				}
+			}
+		} catch (IOException e) {
+			parser.close();
+			throw e;
+		}
+		CsvRow row = new CsvRow(parser, headerIndex);
+		Spliterator<CsvRow> spliterator = new Spliterators.AbstractSpliterator<CsvRow>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super CsvRow> action) {
+				try {
+					if (!parser.next()) {
+						return false;
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				action.accept(row);
+				return true;
+			}
+		};
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				parser.close();
+			} catch (IOException e) {
+				logger.warn("Could not close the CSV file " + file, e);
+			}
+		});
+	}
+
+	/**
+	 * Reads the records appended to a CSV file since the last run, for
+	 * append-only inputs. The offset up to which the file was read is kept as a
+	 * checkpoint by {@link LastRunParameters}, whose checkpoint file must be set:
+	 * the records after it are parsed straight from that offset, and the
+	 * checkpoint is moved and saved once they have all been handled. If the file
+	 * was truncated or rewritten since, its fingerprint no longer matches and the
+	 * whole file is read again. Only records ended by a line break are read, as
+	 * told by {@link CsvParser#isRecordTerminated()}, so that a record being
+	 * appended, even within a quoted field, is read on the next run. Compressed
+	 * files are not supported, their offsets not being those of the file. The
+	 * file is read as UTF-8.
+	 *
+	 * @param csvFile   the path to the CSV file
+	 * @param hasHeader whether the first record is the header of the columns, used
+	 *                  by {@link CsvRow#get(String)} and never handled
+	 * @param action    the action handling each record, a flyweight reused for
+	 *                  the next one
+	 * @return the number of records read
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static long readAppendedRows(String csvFile, boolean hasHeader, Consumer<CsvRow> action)
+			throws IOException {
+		return readAppendedRows(csvFile, StandardCharsets.UTF_8, hasHeader, action);
+	}
+
+	/**
+	 * Reads the records appended to a CSV file in the specified charset since the
+	 * last run, as by {@link #readAppendedRows(String, boolean, Consumer)}.
+	 *
+	 * @param csvFile   the path to the CSV file
+	 * @param charset   the charset of the file, encoding ASCII as ASCII
+	 * @param hasHeader whether the first record is the header of the columns, used
+	 *                  by {@link CsvRow#get(String)} and never handled
+	 * @param action    the action handling each record, a flyweight reused for
+	 *                  the next one
+	 * @return the number of records read
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static long readAppendedRows(String csvFile, Charset charset, boolean hasHeader,
+			Consumer<CsvRow> action) throws IOException {
+		File file = new File(csvFile);
+		try {
+			if (getCompression(file) != Compression.NONE) {
+				String errorMessage = "Appended rows cannot be read from a compressed file: " + csvFile;
+				logger.error(errorMessage);
+				throw new IllegalArgumentException(errorMessage);
+			}
+			LastRunParameters.Checkpoint checkpoint = LastRunParameters.getCheckpoint(file);
+			long start = 0;
+			if (checkpoint != null) {
+				if (checkpoint.matches(file)) {
+					start = checkpoint.getOffset();
+				} else {
+					logger.info("readAppendedRows - {} was truncated or rewritten, reading it again", csvFile);
+				}
+			}
+
+			Map<String, Integer> headerIndex = new HashMap<>();
+			if (hasHeader) {
+				try (CsvParser parser = new CsvParser(file, separator)) {
+					parser.setCharset(charset);
+					if (parser.next()) {
+						for (int i = 0; i < parser.getFieldCount(); i++) {
+							headerIndex.put(XlsxUtils.normalizeHeaderName(parser.getField(i)), i);
+						}
+					}
+					start = Math.max(start, parser.getOffset());
+				}
+			}
+
+			start = skipLineFeedAfterCr(file, start);
+			long end = start;
+			long count = 0;
+			try (CsvParser parser = new CsvParser(file, separator, start, Long.MAX_VALUE)) {
+				parser.setCharset(charset);
+				CsvRow row = new CsvRow(parser, headerIndex);
+				// Stop before the last record if it is still being written
+				while (parser.next() && parser.isRecordTerminated()) {
+					action.accept(row);
+					count++;
+					end = parser.getOffset();
+				}
+			}
+			LastRunParameters.setCheckpoint(file, end);
+			LastRunParameters.saveCheckpoints();
+			logger.debug("readAppendedRows - {} rows read from {} at offset {}", count, csvFile, start);
+			return count;
+		} catch (IOException e) {
+			logger.error("readAppendedRows - An error occurred while reading the CSV file: {}", csvFile, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Skips the line feed of a CRLF line break when the previous run stopped
+	 * after its CR, the line feed being written after that run.
+	 *
+	 * @param file  the file
+	 * @param start the offset from which to read
+	 * @return the offset after the line feed if there is one after a CR, or start
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static long skipLineFeedAfterCr(File file, long start) throws IOException {
+		if (start == 0) {
+			return start;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(2);
+			while (buffer.hasRemaining() && channel.read(buffer, start - 1 + buffer.position()) >= 0) {
+				// Read the byte before start and the byte at start, if any
+			}
+			boolean lineFeedAfterCr = buffer.position() == 2 && buffer.get(0) == '\r' && buffer.get(1) == '\n';
+			return lineFeedAfterCr ? start + 1 : start;
+		}
+	}
+
+	/**
+	 * Reads a CSV file into a columnar table with typed columns. Values are
+	 * trimmed as by {@link #readInputFile(String, List...)}. The file is read as
+	 * UTF-8.
+	 *
+	 * @param csvFile   the path to the CSV file
+	 * @param hasHeader whether the first record is the header of the columns
+	 * @return the table
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static CsvTable readTable(String csvFile, boolean hasHeader) throws IOException {
+		return readTable(csvFile, StandardCharsets.UTF_8, hasHeader);
+	}
+
+	/**
+	 * Reads a CSV file in the specified charset into a columnar table, as by
+	 * {@link #readTable(String, boolean)}.
+	 *
+	 * @param csvFile   the path to the CSV file
+	 * @param charset   the charset of the file, encoding ASCII as ASCII
+	 * @param hasHeader whether the first record is the header of the columns
+	 * @return the table
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static CsvTable readTable(String csvFile, Charset charset, boolean hasHeader) throws IOException {
+		CsvTable table = new CsvTable();
+		String[] values = new String[16];
+		try (CsvParser parser = openParser(new File(csvFile), charset)) {
+			boolean headerRecord = hasHeader;
+			while (parser.next()) {
+				int fieldCount = parser.getFieldCount();
+				if (values.length < fieldCount) {
+					values = new String[fieldCount * 2];
+				}
+				for (int i = 0; i < fieldCount; i++) {
+					values[i] = parser.getField(i).trim();
+				}
+				if (headerRecord) {
+					table.setHeader(Arrays.copyOf(values, fieldCount));
+					headerRecord = false;
+				} else {
+					table.addRow(fieldCount == values.length ? values : Arrays.copyOf(values, fieldCount));
+				}
+			}
+		} catch (IOException e) {
+			logger.error("readTable - An error occurred while reading the CSV file: {}", csvFile, e);
+			throw e;
+		}
+		return table;
+	}
+
 	/**
 	 * Adds headers to the provided lists and shifts the current values down.
 	 *
@@ -70,15 +579,33 @@ public class CsvUtils {
 	}
 
 	/**
-	 * Writes the provided lists to a CSV file with the specified name. The file
-	 * name is suffixed with the current timestamp.
+	 * Writes the provided lists to a CSV file with the specified name, encoded
+	 * as UTF-8 (the platform default charset was used before), one list per
+	 * column. Fields containing the separator, a quote or a line break are
+	 * quoted, their quotes doubled (RFC 4180). The ".csv" extension is added to
+	 * the name if missing.
 	 *
 	 * @param outputFileName the base name of the output file
 	 * @param lists          the lists containing the data to write
-	 * @throws IOException 
+	 * @throws IOException if an I/O error occurs
 	 */
     @SafeVarargs
     public static void writeOutput(String outputFileName, List<String>... lists) throws IOException {
+        writeOutput(outputFileName, StandardCharsets.UTF_8, lists);
+    }
+
+	/**
+	 * Writes the provided lists to a CSV file with the specified name and charset,
+	 * through a {@link CsvWriter}: fields are quoted as needed, and the lists are
+	 * read with iterators, the row count being the size of the longest list.
+	 *
+	 * @param outputFileName the base name of the output file
+	 * @param charset        the charset of the output file
+	 * @param lists          the lists containing the data to write
+	 * @throws IOException if an I/O error occurs
+	 */
+    @SafeVarargs
+    public static void writeOutput(String outputFileName, Charset charset, List<String>... lists) throws IOException {
        
     	if(!outputFileName.contains(".csv"))
     		outputFileName += ".csv";
@@ -86,27 +613,110 @@ public class CsvUtils {
     	File file = new File(outputFileName);
 
         try {
-            writeToFile(file, lists);
+            writeToFile(file, charset, lists);
         } catch (IOException e) {
             logger.error("writeOutput - An error occurred in CsvUtils", e);
             throw e;
         }
     }
     
-    private static void writeToFile(File file, List<String>[] lists) throws IOException {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(file))) {
-            int size = lists[0].size();
-            for (int i = 0; i < size; i++) {
-                StringBuilder row = new StringBuilder();
-                for (int j = 0; j < lists.length; j++) {
-                    if (j > 0) {
-                        row.append(CsvUtils.separator);
-                    }
-                    row.append(lists[j].get(i));
-                }
-                pw.println(row.toString());
-            }
-        }}
+    private static void writeToFile(File file, Charset charset, List<String>[] lists) throws IOException {
+        try (CsvWriter writer = openWriter(file, charset)) {
+            writer.writeColumns(Arrays.asList(lists));
+        }
+    }
+
+	/**
+	 * Writes a columnar table to a CSV file, header first, quoting the values as
+	 * needed. The file is written in UTF-8, like the files read by
+	 * {@link #readTable(String, boolean)}.
+	 *
+	 * @param outputFileName the name of the output file, suffixed with .csv if
+	 *                       needed
+	 * @param table          the table to write
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void writeTable(String outputFileName, CsvTable table) throws IOException {
+		if (!outputFileName.contains(".csv"))
+			outputFileName += ".csv";
+
+		try (CsvWriter writer = openWriter(new File(outputFileName), StandardCharsets.UTF_8)) {
+			writer.writeTable(table);
+		} catch (IOException e) {
+			logger.error("writeTable - An error occurred in CsvUtils", e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a parser on a CSV file, mapped if it is not compressed, read from the
+	 * decompressed stream otherwise.
+	 *
+	 * @param file    the CSV file
+	 * @param charset the charset of the file
+	 * @return the parser
+	 * @throws IOException if the file cannot be opened
+	 */
+	private static CsvParser openParser(File file, Charset charset) throws IOException {
+		CsvParser parser = getCompression(file) == Compression.NONE ? new CsvParser(file, separator)
+				: new CsvParser(openInput(file.getPath(), backgroundDecompression), separator);
+		try {
+			parser.setCharset(charset);
+		} catch (IllegalArgumentException e) {
+			parser.close();
+			throw e;
+		}
+		return parser;
+	}
+
+	/**
+	 * Opens a writer on a CSV file, compressed as given by its name.
+	 *
+	 * @param file    the CSV file
+	 * @param charset the charset of the file
+	 * @return the writer
+	 * @throws IOException if the file cannot be created
+	 */
+	private static CsvWriter openWriter(File file, Charset charset) throws IOException {
+		if (getOutputCompression(file.getName()) == Compression.NONE) {
+			return new CsvWriter(file, charset, separator);
+		}
+		return new CsvWriter(openOutput(file.getPath()), charset, separator);
+	}
+
+	/**
+	 * Detects the compression of a file from its magic number, or from its name
+	 * for raw deflate streams, which have none.
+	 *
+	 * @param file the file
+	 * @return the compression of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	private static Compression getCompression(File file) throws IOException {
+		if (file.getName().endsWith(".deflate")) {
+			return Compression.DEFLATE;
+		}
+		try (InputStream input = new FileInputStream(file)) {
+			int first = input.read();
+			int second = input.read();
+			return first == (GZIPInputStream.GZIP_MAGIC & 0xFF) && second == (GZIPInputStream.GZIP_MAGIC >> 8)
+					? Compression.GZIP
+					: Compression.NONE;
+		}
+	}
+
+	/**
+	 * Gives the compression of a file to write from its name.
+	 *
+	 * @param fileName the name of the file
+	 * @return the compression of the file
+	 */
+	private static Compression getOutputCompression(String fileName) {
+		if (fileName.endsWith(".gz")) {
+			return Compression.GZIP;
+		}
+		return fileName.endsWith(".deflate") ? Compression.DEFLATE : Compression.NONE;
+	}
 
 	/**
 	 * Private method to determine the regional separator used in the system.
@@ -117,4 +727,280 @@ public class CsvUtils {
 		DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.getDefault());
 		return symbols.getGroupingSeparator() == '.' ? ';' : ',';
 	}
+
+	/**
+	 * The file streamed by {@link #streamRows(String, Charset, boolean)}, shared
+	 * by the spliterators of the stream: its header, its record boundaries and
+	 * the parsers opened on it.
+	 */
+	private static class RowSource {
+
+		private final File file;
+		private final Charset charset;
+		private final Map<String, Integer> headerIndex;
+		private final long dataStart;
+		private final List<CsvParser> openParsers = new ArrayList<>();
+		private long[] bounds;
+
+		RowSource(File file, Charset charset, Map<String, Integer> headerIndex, long dataStart) {
+			this.file = file;
+			this.charset = charset;
+			this.headerIndex = headerIndex;
+			this.dataStart = dataStart;
+		}
+
+		/**
+		 * Retrieves the record boundaries of the file after the header, computing
+		 * them on the first call.
+		 *
+		 * @return the offsets of the record boundaries, in file order
+		 * @throws IOException if an I/O error occurs
+		 */
+		synchronized long[] getBounds() throws IOException {
+			if (bounds == null) {
+				int splits = ForkJoinPool.getCommonPoolParallelism() * 4;
+				long[] fileBounds = CsvParser.splitRecords(file, separator, splits, ForkJoinPool.commonPool());
+				List<Long> dataBounds = new ArrayList<>();
+				for (long bound : fileBounds) {
+					if (bound > dataStart) {
+						dataBounds.add(bound);
+					}
+				}
+				bounds = new long[dataBounds.size()];
+				for (int i = 0; i < bounds.length; i++) {
+					bounds[i] = dataBounds.get(i);
+				}
+			}
+			return bounds;
+		}
+
+		/**
+		 * Opens a parser on a range of the file.
+		 *
+		 * @param start the offset of the first record of the range
+		 * @param end   the offset of the end of the range
+		 * @return the parser
+		 * @throws IOException if the file cannot be opened
+		 */
+		synchronized CsvParser open(long start, long end) throws IOException {
+			CsvParser parser = new CsvParser(file, separator, start, end);
+			parser.setCharset(charset);
+			openParsers.add(parser);
+			return parser;
+		}
+
+		/**
+		 * Closes a parser opened by {@link #open(long, long)}.
+		 *
+		 * @param parser the parser
+		 * @throws IOException if an I/O error occurs
+		 */
+		synchronized void close(CsvParser parser) throws IOException {
+			openParsers.remove(parser);
+			parser.close();
+		}
+
+		/**
+		 * Closes the parsers still open, when the stream is closed.
+		 */
+		synchronized void close() {
+			for (CsvParser parser : openParsers) {
+				try {
+					parser.close();
+				} catch (IOException e) {
+					logger.warn("Could not close the CSV file " + file, e);
+				}
+			}
+			openParsers.clear();
+		}
+	}
+
+	/**
+	 * Spliterator over the records of a byte range of a CSV file, split on the
+	 * record boundaries of the file.
+	 */
+	private static class RowSpliterator implements Spliterator<CsvRow> {
+
+		private final RowSource source;
+		private long start;
+		private final long end;
+		private CsvParser parser;
+		private CsvRow row;
+
+		RowSpliterator(RowSource source, long start, long end) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super CsvRow> action) {
+			try {
+				if (parser == null) {
+					if (start >= end) {
+						return false;
+					}
+					parser = source.open(start, end);
+					row = new CsvRow(parser, source.headerIndex);
+				}
+				if (parser.next()) {
+					action.accept(row);
+					return true;
+				}
+				source.close(parser);
+				parser = null;
+				start = end;
+				return false;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public Spliterator<CsvRow> trySplit() {
+			if (parser != null) {
+				return null;
+			}
+			long[] bounds;
+			try {
+				bounds = source.getBounds();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			int first = 0;
+			while (first < bounds.length && bounds[first] <= start) {
+				first++;
+			}
+			int last = first;
+			while (last < bounds.length && bounds[last] < end) {
+				last++;
+			}
+			if (first == last) {
+				return null;
+			}
+			long middle = bounds[(first + last) / 2];
+			RowSpliterator prefix = new RowSpliterator(source, start, middle);
+			start = middle;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return end - start;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | NONNULL;
+		}
+	}
+
+	/**
+	 * Input stream reading another one on a separate thread, such as a
+	 * decompressing one, into buffers handed over through a bounded queue, so
+	 * that decompression runs ahead of the parsing. The buffers are recycled.
+	 */
+	private static class BackgroundInputStream extends InputStream {
+
+		// Marker of the end of the stream.
+		private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+		private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BACKGROUND_BUFFERS + 1);
+		private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BACKGROUND_BUFFERS);
+		private final Thread thread;
+		private volatile IOException error;
+		private ByteBuffer current;
+
+		BackgroundInputStream(InputStream input, String name) {
+			for (int i = 0; i < BACKGROUND_BUFFERS; i++) {
+				free.add(ByteBuffer.allocate(COMPRESSED_BUFFER_SIZE));
+			}
+			thread = new Thread(() -> readAhead(input), "csv-read-" + name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * Reads the input into free buffers until its end, on the reading thread,
+		 * then closes it.
+		 *
+		 * @param input the input stream
+		 */
+		private void readAhead(InputStream input) {
+			try {
+				while (true) {
+					ByteBuffer buffer = free.take();
+					byte[] array = buffer.array();
+					int limit = 0;
+					int read = 0;
+					while (limit < array.length && (read = input.read(array, limit, array.length - limit)) >= 0) {
+						limit += read;
+					}
+					if (limit > 0) {
+						((Buffer) buffer).clear();
+						((Buffer) buffer).limit(limit);
+						filled.put(buffer);
+					}
+					if (read < 0) {
+						break;
+					}
+				}
+			} catch (IOException e) {
+				error = e;
+			} catch (InterruptedException e) {
+				// Closed before the end of the input
+				return;
+			} finally {
+				try {
+					input.close();
+				} catch (IOException e) {
+					logger.warn("Could not close the CSV input", e);
+				}
+			}
+			filled.add(END);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (current == null || !current.hasRemaining()) {
+				if (current != null && current != END) {
+					free.add(current);
+				}
+				try {
+					current = current == END ? END : filled.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while reading the CSV input");
+				}
+				if (current == END) {
+					if (error != null) {
+						throw error;
+					}
+					return -1;
+				}
+			}
+			int count = Math.min(len, current.remaining());
+			current.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
 }
@@ -0,0 +1,374 @@
+package yga.utilipack;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * CSV writer encoding the fields straight into a reusable direct buffer, which
+ * is written to a file channel, or an output stream, when full. Fields
+ * containing the separator, a quote or a line break are quoted, their quotes
+ * doubled (RFC 4180). UTF-8 is encoded without going through a
+ * {@link CharsetEncoder}; other charsets use one, unmappable characters being
+ * replaced.
+ *
+ * <p>
+ * Rows can be written field by field, as arrays or lists, or taken from
+ * columns, each column being read once with an iterator, so columns stored in
+ * linked lists are not read by index.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * try (CsvWriter writer = new CsvWriter(new File("output.csv"), StandardCharsets.UTF_8)) {
+ * 	writer.writeRow("id", "name");
+ * 	writer.writeRow("1", "a, b");
+ * }
+ * </pre>
+ * </p>
+ */
+public class CsvWriter implements Closeable, Flushable {
+
+	private static final Logger logger = LogManager.getLogger(CsvWriter.class);
+
+	/** Size of the buffer the fields are encoded into. */
+	public static final int BUFFER_SIZE = 1 << 18;
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final char separator;
+
+	// Encoder of the charset, null when encoding UTF-8 directly.
+	private final CharsetEncoder encoder;
+
+	private String lineSeparator = System.lineSeparator();
+
+	// Whether the next field is the first one of its row.
+	private boolean firstField = true;
+
+	/**
+	 * Creates a file, replacing it if it exists, to write CSV rows with the
+	 * regional separator of {@link CsvUtils}.
+	 *
+	 * @param file    the CSV file
+	 * @param charset the charset of the file
+	 * @throws IOException if the file cannot be created
+	 */
+	public CsvWriter(File file, Charset charset) throws IOException {
+		this(file, charset, CsvUtils.getSeparator());
+	}
+
+	/**
+	 * Creates a file, replacing it if it exists, to write CSV rows.
+	 *
+	 * @param file      the CSV file
+	 * @param charset   the charset of the file
+	 * @param separator the field separator
+	 * @throws IOException if the file cannot be created
+	 */
+	public CsvWriter(File file, Charset charset, char separator) throws IOException {
+		this.separator = separator;
+		this.encoder = StandardCharsets.UTF_8.equals(charset) ? null
+				: charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		logger.debug("CsvWriter opened on file: " + file);
+	}
+
+	/**
+	 * Writes CSV rows to an output stream, such as a compressing one, closed with
+	 * the writer.
+	 *
+	 * @param output    the output stream
+	 * @param charset   the charset of the rows
+	 * @param separator the field separator
+	 */
+	public CsvWriter(OutputStream output, Charset charset, char separator) {
+		this.separator = separator;
+		this.encoder = StandardCharsets.UTF_8.equals(charset) ? null
+				: charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.channel = Channels.newChannel(output);
+		logger.debug("CsvWriter opened on output stream");
+	}
+
+	/**
+	 * Sets the line separator ending the rows, the platform one by default.
+	 *
+	 * @param lineSeparator the line separator
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Writes a field of the current row, quoting it if needed.
+	 *
+	 * @param field the value of the field, null being written as an empty field
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeField(String field) throws IOException {
+		if (!firstField) {
+			writeChar(separator);
+		}
+		firstField = false;
+		if (field == null || field.isEmpty()) {
+			return;
+		}
+		if (needsQuotes(field)) {
+			writeChar('"');
+			writeText(field, true);
+			writeChar('"');
+		} else {
+			writeText(field, false);
+		}
+	}
+
+	/**
+	 * Ends the current row.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void endRow() throws IOException {
+		writeText(lineSeparator, false);
+		firstField = true;
+	}
+
+	/**
+	 * Writes a row.
+	 *
+	 * @param fields the values of the fields
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeRow(String... fields) throws IOException {
+		for (String field : fields) {
+			writeField(field);
+		}
+		endRow();
+	}
+
+	/**
+	 * Writes a row.
+	 *
+	 * @param fields the values of the fields
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeRow(List<String> fields) throws IOException {
+		for (String field : fields) {
+			writeField(field);
+		}
+		endRow();
+	}
+
+	/**
+	 * Writes the rows held by columns, the row count being the size of the longest
+	 * column. Shorter columns give empty fields.
+	 *
+	 * @param columns the values of each column
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeColumns(List<? extends List<String>> columns) throws IOException {
+		List<Iterator<String>> iterators = new ArrayList<>(columns.size());
+		int rowCount = 0;
+		for (List<String> column : columns) {
+			iterators.add(column.iterator());
+			rowCount = Math.max(rowCount, column.size());
+		}
+		for (int i = 0; i < rowCount; i++) {
+			for (Iterator<String> iterator : iterators) {
+				writeField(iterator.hasNext() ? iterator.next() : null);
+			}
+			endRow();
+		}
+	}
+
+	/**
+	 * Writes a columnar table, its header first if it has one.
+	 *
+	 * @param table the table
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeTable(CsvTable table) throws IOException {
+		String[] header = table.getHeader();
+		if (header.length > 0) {
+			writeRow(header);
+		}
+		int columnCount = table.getColumnCount();
+		for (int i = 0; i < table.getRowCount(); i++) {
+			for (int j = 0; j < columnCount; j++) {
+				writeField(table.getString(i, j));
+			}
+			endRow();
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes to the file.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void flush() throws IOException {
+		// Called through Buffer, whose flip() and clear() return Buffer on Java 8
+		((Buffer) buffer).flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	}
+
+	/**
+	 * Writes the buffered bytes and closes the file or the output stream.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (encoder != null) {
+				CoderResult result;
+				while ((result = encoder.encode(CharBuffer.wrap(""), buffer, true)).isOverflow()) {
+					flush();
+				}
+				throwIfError(result);
+				while ((result = encoder.flush(buffer)).isOverflow()) {
+					flush();
+				}
+				throwIfError(result);
+			}
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Checks if a field must be quoted.
+	 *
+	 * @param field the field
+	 * @return true if the field contains the separator, a quote or a line break
+	 */
+	private boolean needsQuotes(String field) {
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == separator || c == '"' || c == '\n' || c == '\r') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Encodes a character known to be ASCII.
+	 *
+	 * @param c the character
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void writeChar(char c) throws IOException {
+		if (encoder != null || c >= 0x80) {
+			writeText(String.valueOf(c), false);
+			return;
+		}
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put((byte) c);
+	}
+
+	/**
+	 * Encodes a text into the buffer, flushing it when full.
+	 *
+	 * @param text         the text
+	 * @param doubleQuotes whether to double the quotes of the text
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void writeText(String text, boolean doubleQuotes) throws IOException {
+		if (encoder != null) {
+			encode(doubleQuotes ? text.replace("\"", "\"\"") : text);
+			return;
+		}
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			if (buffer.remaining() < 4) {
+				flush();
+			}
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+				if (c == '"' && doubleQuotes) {
+					buffer.put((byte) '"');
+				}
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				buffer.put((byte) '?'); // Unpaired surrogate, replaced as by String.getBytes
+			} else {
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	/**
+	 * Encodes a text with the encoder of the charset.
+	 *
+	 * @param text the text
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void encode(String text) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(text);
+		while (true) {
+			CoderResult result = encoder.encode(chars, buffer, false);
+			if (result.isOverflow()) {
+				flush();
+			} else {
+				throwIfError(result);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Throws the error reported by the encoder, if any.
+	 *
+	 * @param result the result of the encoder
+	 * @throws CharacterCodingException if the result is an error
+	 */
+	private static void throwIfError(CoderResult result) throws CharacterCodingException {
+		if (result.isError()) {
+			result.throwException();
+		}
+	}
+}
@@ -0,0 +1,734 @@
+package yga.utilipack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * In-memory index of the files of a directory tree, with their size and last
+ * modification time, answering listings without reading the disk. The tree is
+ * scanned once by a {@link DirectoryWalker}, then every directory is watched
+ * with a {@link WatchService} and a watcher thread applies the changes to the
+ * index; when the watch service reports lost events, the tree is scanned
+ * again. As with the walker, the files indexed are the regular files and the
+ * symbolic links to regular files, with the size and time of their target;
+ * a target changed outside the directory of its link is only seen by a
+ * {@link #rescan()}.
+ *
+ * <p>
+ * The index can be kept in a snapshot file, a deflated binary file written on
+ * {@link #close()} and read on {@link #start()} instead of a full scan. The
+ * directories of a snapshot are then checked against their modification time,
+ * and only those which changed are listed again: files modified in place while
+ * the index was not running are only seen by a {@link #rescan()}.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * DirectoryIndex index = new DirectoryIndex(Paths.get("/path/to/share"), Paths.get("share.idx"));
+ * index.start();
+ * FileUtils.setDirectoryIndex(index);
+ * List&lt;String&gt; names = FileUtils.findFiles("/path/to/share/inbox");
+ * ...
+ * index.close();
+ * </pre>
+ * </p>
+ */
+public class DirectoryIndex implements Closeable {
+
+	private static final Logger logger = LogManager.getLogger(DirectoryIndex.class);
+
+	// Magic number and version of the snapshot files.
+	private static final int SNAPSHOT_MAGIC = 0x59444958;
+	private static final int SNAPSHOT_VERSION = 1;
+
+	private final Path root;
+	private final Path snapshotFile;
+
+	private WatchService watchService;
+	private Thread watcher;
+
+	// Entries of the indexed directories by absolute path, replaced by a rescan.
+	// Changes are made while holding the lock of the index; queries do not lock.
+	private volatile Map<Path, DirectoryEntry> directories = new ConcurrentHashMap<>();
+
+	// Directories watched by each key. A watch follows its directory when it is
+	// moved, its key being returned again when the new path is registered, so
+	// events are resolved against this map rather than WatchKey.watchable().
+	private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates the index of a directory tree, to be started.
+	 *
+	 * @param root         the root directory of the tree
+	 * @param snapshotFile the snapshot file of the index, or null to scan the tree
+	 *                     on each start
+	 */
+	public DirectoryIndex(Path root, Path snapshotFile) {
+		this.root = root.toAbsolutePath().normalize();
+		this.snapshotFile = snapshotFile;
+	}
+
+	/**
+	 * Fills the index from the snapshot file if it holds the index of the same
+	 * tree, or else by scanning the tree, and starts watching the tree.
+	 *
+	 * @throws IOException if the tree cannot be scanned or watched
+	 */
+	public synchronized void start() throws IOException {
+		if (watchService != null) {
+			String errorMessage = "The index of " + root + " is already started";
+			logger.error(errorMessage);
+			throw new IllegalStateException(errorMessage);
+		}
+		watchService = root.getFileSystem().newWatchService();
+		try {
+			if (snapshotFile != null && Files.exists(snapshotFile) && loadSnapshot()) {
+				revalidate();
+			} else {
+				rescan();
+			}
+		} catch (IOException e) {
+			watchService.close();
+			watchService = null;
+			logger.error("Could not index the directory " + root, e);
+			throw e;
+		}
+		watcher = new Thread(this::watch, "index-" + root.getFileName());
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Scans the whole tree again, replacing the content of the index once done.
+	 *
+	 * @throws IOException if the root directory cannot be read
+	 */
+	public synchronized void rescan() throws IOException {
+		long start = System.currentTimeMillis();
+		Map<Path, DirectoryEntry> scanned = new ConcurrentHashMap<>();
+		scanTree(root, scanned);
+		directories = scanned;
+		logger.info("Indexed {} files in {} directories of {} in {} ms", getFileCount(), scanned.size(), root,
+				System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Checks if a path is in the indexed tree.
+	 *
+	 * @param path the path
+	 * @return true if the path is the root directory or under it
+	 */
+	public boolean covers(Path path) {
+		return path.toAbsolutePath().normalize().startsWith(root);
+	}
+
+	/**
+	 * Checks if a directory is in the index, which is not the case of a path of
+	 * the tree which does not exist, is not a directory or could not be watched.
+	 *
+	 * @param directory the directory
+	 * @return true if the directory is indexed, false otherwise
+	 */
+	public boolean isIndexed(Path directory) {
+		return directories.containsKey(directory.toAbsolutePath().normalize());
+	}
+
+	/**
+	 * Lists the names of the files of a directory, as by
+	 * {@link FileUtils#findFiles(String)}.
+	 *
+	 * @param directory the directory
+	 * @return the names of its files, or null if the directory is not indexed, to
+	 *         be read from the disk
+	 */
+	public List<String> listFileNames(Path directory) {
+		DirectoryEntry entry = directories.get(directory.toAbsolutePath().normalize());
+		return entry != null ? new ArrayList<>(entry.files.keySet()) : null;
+	}
+
+	/**
+	 * Lists the absolute paths of the files of a directory.
+	 *
+	 * @param directory the directory
+	 * @param recursive whether to list the files of the subdirectories
+	 * @param extension the extension of the files to list, compared as by
+	 *                  {@link FileUtils#getAllFilesPath(java.io.File, String)}, or
+	 *                  null to list every file
+	 * @return the paths of the files, in no particular order
+	 */
+	public List<String> listFiles(Path directory, boolean recursive, String extension) {
+		Path start = directory.toAbsolutePath().normalize();
+		List<String> files = new ArrayList<>();
+		Map<Path, DirectoryEntry> current = directories;
+		Deque<Path> pending = new ArrayDeque<>();
+		pending.push(start);
+		while (!pending.isEmpty()) {
+			Path path = pending.pop();
+			DirectoryEntry entry = current.get(path);
+			if (entry != null) {
+				addFiles(path, entry, extension, files);
+				if (recursive) {
+					pending.addAll(entry.subdirectories);
+				}
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Counts the subdirectories of a directory.
+	 *
+	 * @param directory the directory
+	 * @param recursive whether to count the subdirectories at every depth
+	 * @return the number of subdirectories
+	 */
+	public int getDirectoryCount(Path directory, boolean recursive) {
+		Map<Path, DirectoryEntry> current = directories;
+		int count = 0;
+		Deque<Path> pending = new ArrayDeque<>();
+		pending.push(directory.toAbsolutePath().normalize());
+		while (!pending.isEmpty()) {
+			DirectoryEntry entry = current.get(pending.pop());
+			if (entry != null) {
+				count += entry.subdirectories.size();
+				if (recursive) {
+					pending.addAll(entry.subdirectories);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of files in the index
+	 */
+	public long getFileCount() {
+		long count = 0;
+		for (DirectoryEntry entry : directories.values()) {
+			count += entry.files.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Retrieves the size of a file from the index.
+	 *
+	 * @param file the file
+	 * @return its size in bytes, or -1 if it is not indexed
+	 */
+	public long getSize(Path file) {
+		FileInfo info = getFileInfo(file);
+		return info != null ? info.size : -1;
+	}
+
+	/**
+	 * Retrieves the last modification time of a file from the index.
+	 *
+	 * @param file the file
+	 * @return its last modification time in milliseconds since the epoch, or -1
+	 *         if it is not indexed
+	 */
+	public long getLastModified(Path file) {
+		FileInfo info = getFileInfo(file);
+		return info != null ? info.lastModified : -1;
+	}
+
+	/**
+	 * Writes the index to the snapshot file. It is written to a temporary file
+	 * first, then moved over the snapshot file.
+	 *
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public synchronized void saveSnapshot() throws IOException {
+		if (snapshotFile == null) {
+			String errorMessage = "No snapshot file for the index of " + root;
+			logger.error(errorMessage);
+			throw new IllegalStateException(errorMessage);
+		}
+		Path tempFile = FileUtils.createTempFileFor(snapshotFile);
+		try {
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(tempFile)), 1 << 16))) {
+				output.writeInt(SNAPSHOT_MAGIC);
+				output.writeInt(SNAPSHOT_VERSION);
+				output.writeUTF(root.toString());
+				output.writeInt(directories.size());
+				for (Map.Entry<Path, DirectoryEntry> entry : directories.entrySet()) {
+					DirectoryEntry directoryEntry = entry.getValue();
+					output.writeUTF(root.relativize(entry.getKey()).toString());
+					output.writeLong(directoryEntry.lastModified);
+					output.writeInt(directoryEntry.files.size());
+					for (Map.Entry<String, FileInfo> file : directoryEntry.files.entrySet()) {
+						output.writeUTF(file.getKey());
+						output.writeLong(file.getValue().size);
+						output.writeLong(file.getValue().lastModified);
+					}
+				}
+			}
+			try {
+				Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+			logger.info("Index of {} saved to {}", root, snapshotFile);
+		} catch (IOException e) {
+			logger.error("Could not save the index of " + root + " to " + snapshotFile, e);
+			Files.deleteIfExists(tempFile);
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops watching the tree and writes the snapshot file, if any.
+	 *
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		Thread stoppedWatcher;
+		synchronized (this) {
+			if (watchService == null) {
+				return;
+			}
+			watchService.close();
+			watchService = null;
+			stoppedWatcher = watcher;
+		}
+		try {
+			stoppedWatcher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (snapshotFile != null) {
+			saveSnapshot();
+		}
+	}
+
+	/**
+	 * Applies the events of the watched directories until the watch service is
+	 * closed, on the watcher thread.
+	 */
+	private void watch() {
+		WatchService service = watchService;
+		while (true) {
+			WatchKey key;
+			try {
+				key = service.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			List<WatchEvent<?>> events = key.pollEvents();
+			boolean valid = key.reset();
+			try {
+				apply(key, events, valid);
+			} catch (ClosedWatchServiceException e) {
+				return;
+			} catch (IOException e) {
+				logger.warn("Could not update the index of " + root + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Applies the events of a watched directory to the index.
+	 *
+	 * @param key    the key of the directory
+	 * @param events the events of its entries
+	 * @param valid  whether the directory is still watched
+	 * @throws IOException if a rescan fails
+	 */
+	private synchronized void apply(WatchKey key, List<WatchEvent<?>> events, boolean valid) throws IOException {
+		Path directory = watchedDirectories.get(key);
+		if (directory == null) {
+			return; // No longer indexed
+		}
+		if (!valid) {
+			watchedDirectories.remove(key, directory);
+		}
+		for (WatchEvent<?> event : events) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				logger.info("Events lost in {}, scanning it again", root);
+				rescan();
+				return;
+			}
+			Path child = directory.resolve((Path) event.context());
+			if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+				remove(child);
+			} else {
+				update(child);
+			}
+		}
+		DirectoryEntry entry = directories.get(directory);
+		if (!valid) {
+			removeTree(directory);
+		} else if (entry != null) {
+			try {
+				entry.lastModified = Files.getLastModifiedTime(directory, LinkOption.NOFOLLOW_LINKS).toMillis();
+			} catch (NoSuchFileException e) {
+				removeTree(directory);
+			}
+		}
+	}
+
+	/**
+	 * Updates the entry of a created or modified path, scanning it if it is a new
+	 * directory.
+	 *
+	 * @param path the path
+	 * @throws IOException if the path cannot be read
+	 */
+	private void update(Path path) throws IOException {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException e) {
+			remove(path);
+			return;
+		}
+		DirectoryEntry parent = directories.get(path.getParent());
+		if (attrs.isDirectory()) {
+			if (parent != null) {
+				parent.files.remove(path.getFileName().toString());
+			}
+			if (!directories.containsKey(path)) {
+				scanTree(path, directories);
+			}
+		} else {
+			removeTree(path);
+			BasicFileAttributes fileAttrs = DirectoryWalker.readFileAttributes(path, attrs);
+			if (parent != null && fileAttrs != null) {
+				parent.files.put(path.getFileName().toString(), new FileInfo(fileAttrs));
+			} else if (parent != null) {
+				parent.files.remove(path.getFileName().toString()); // No longer a regular file
+			}
+		}
+	}
+
+	/**
+	 * Removes a deleted path from the index.
+	 *
+	 * @param path the path
+	 */
+	private void remove(Path path) {
+		DirectoryEntry parent = directories.get(path.getParent());
+		if (parent != null) {
+			parent.files.remove(path.getFileName().toString());
+		}
+		removeTree(path);
+	}
+
+	/**
+	 * Removes a directory and its subdirectories from the index, and stops
+	 * watching them.
+	 *
+	 * @param directory the directory
+	 */
+	private void removeTree(Path directory) {
+		DirectoryEntry parent = directories.get(directory.getParent());
+		if (parent != null) {
+			parent.subdirectories.remove(directory);
+		}
+		Deque<Path> pending = new ArrayDeque<>();
+		pending.push(directory);
+		while (!pending.isEmpty()) {
+			Path path = pending.pop();
+			DirectoryEntry entry = directories.remove(path);
+			if (entry != null) {
+				// Unless the key now watches the directory at its new path
+				if (entry.key != null && watchedDirectories.remove(entry.key, path)) {
+					entry.key.cancel();
+				}
+				pending.addAll(entry.subdirectories);
+			}
+		}
+	}
+
+	/**
+	 * Adds the entry of a directory to a map of entries, linking it to the entry
+	 * of its parent.
+	 *
+	 * @param target    the map of entries
+	 * @param directory the directory
+	 * @param entry     the entry of the directory
+	 */
+	private static void putDirectory(Map<Path, DirectoryEntry> target, Path directory, DirectoryEntry entry) {
+		target.put(directory, entry);
+		DirectoryEntry parent = target.get(directory.getParent());
+		if (parent != null) {
+			parent.subdirectories.add(directory);
+		}
+	}
+
+	/**
+	 * Scans a directory tree into a map of entries, watching its directories.
+	 *
+	 * @param directory the directory
+	 * @param target    the map of entries
+	 * @throws IOException if the directory cannot be read
+	 */
+	private void scanTree(Path directory, Map<Path, DirectoryEntry> target) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(directory, BasicFileAttributes.class,
+				LinkOption.NOFOLLOW_LINKS);
+		if (!attrs.isDirectory()) {
+			throw new IOException("Not a directory: " + directory);
+		}
+		putDirectory(target, directory, new DirectoryEntry(attrs.lastModifiedTime().toMillis(), register(directory)));
+		DirectoryWalker walker = new DirectoryWalker(directory);
+		walker.walkAttributes((path, pathAttrs) -> {
+			if (pathAttrs.isDirectory()) {
+				putDirectory(target, path,
+						new DirectoryEntry(pathAttrs.lastModifiedTime().toMillis(), register(path)));
+			} else {
+				target.computeIfAbsent(path.getParent(), parent -> new DirectoryEntry(0, null)).files
+						.put(path.getFileName().toString(), new FileInfo(pathAttrs));
+			}
+		});
+	}
+
+	/**
+	 * Checks the directories loaded from the snapshot against their modification
+	 * time, listing again those which changed.
+	 *
+	 * @throws IOException if a directory cannot be read
+	 */
+	private synchronized void revalidate() throws IOException {
+		long start = System.currentTimeMillis();
+		int changed = 0;
+		for (Path directory : new ArrayList<>(directories.keySet())) {
+			DirectoryEntry entry = directories.get(directory);
+			if (entry == null) {
+				continue; // Removed with its parent
+			}
+			BasicFileAttributes attrs;
+			try {
+				attrs = Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (NoSuchFileException e) {
+				removeTree(directory);
+				continue;
+			}
+			if (!attrs.isDirectory()) {
+				removeTree(directory);
+				continue;
+			}
+			entry.key = register(directory);
+			if (attrs.lastModifiedTime().toMillis() != entry.lastModified) {
+				refresh(directory, entry, attrs.lastModifiedTime().toMillis());
+				changed++;
+			}
+		}
+		if (!directories.containsKey(root)) {
+			rescan();
+			return;
+		}
+		logger.info("Index of {} loaded, {} directories changed since, checked in {} ms", root, changed,
+				System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Lists a directory again, scanning its new subdirectories.
+	 *
+	 * @param directory    the directory
+	 * @param entry        the entry of the directory
+	 * @param lastModified the last modification time of the directory
+	 * @throws IOException if the directory cannot be read
+	 */
+	private void refresh(Path directory, DirectoryEntry entry, long lastModified) throws IOException {
+		Map<String, FileInfo> files = new HashMap<>();
+		Set<Path> subdirectories = new HashSet<>();
+		Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isDirectory()) {
+					subdirectories.add(file);
+				} else {
+					BasicFileAttributes fileAttrs = DirectoryWalker.readFileAttributes(file, attrs);
+					if (fileAttrs != null) {
+						files.put(file.getFileName().toString(), new FileInfo(fileAttrs));
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				logger.warn("Could not read " + file + ": " + e);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		entry.files.keySet().retainAll(files.keySet());
+		entry.files.putAll(files);
+		entry.lastModified = lastModified;
+		for (Path path : new ArrayList<>(entry.subdirectories)) {
+			if (!subdirectories.contains(path)) {
+				removeTree(path);
+			}
+		}
+		for (Path subdirectory : subdirectories) {
+			if (!directories.containsKey(subdirectory)) {
+				scanTree(subdirectory, directories);
+			}
+		}
+	}
+
+	/**
+	 * Watches a directory for created, deleted and modified entries.
+	 *
+	 * @param directory the directory
+	 * @return the key of the directory, or null if it cannot be watched
+	 */
+	private WatchKey register(Path directory) {
+		WatchService service = watchService;
+		if (service == null) {
+			return null; // Rescanned while not started
+		}
+		try {
+			WatchKey key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			watchedDirectories.put(key, directory);
+			return key;
+		} catch (IOException e) {
+			logger.warn("Could not watch the directory " + directory + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the snapshot file into the index.
+	 *
+	 * @return true if the snapshot was read, false if it is not one of this tree
+	 * @throws IOException if the snapshot cannot be read
+	 */
+	private boolean loadSnapshot() throws IOException {
+		Map<Path, DirectoryEntry> loaded = new ConcurrentHashMap<>();
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new InflaterInputStream(Files.newInputStream(snapshotFile)), 1 << 16))) {
+			if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION
+					|| !root.toString().equals(input.readUTF())) {
+				logger.info("The snapshot {} is not an index of {}, scanning it", snapshotFile, root);
+				return false;
+			}
+			int directoryCount = input.readInt();
+			for (int i = 0; i < directoryCount; i++) {
+				Path directory = root.resolve(input.readUTF());
+				DirectoryEntry entry = new DirectoryEntry(input.readLong(), null);
+				int fileCount = input.readInt();
+				for (int j = 0; j < fileCount; j++) {
+					String name = input.readUTF();
+					entry.files.put(name, new FileInfo(input.readLong(), input.readLong()));
+				}
+				loaded.put(directory, entry);
+			}
+		}
+		for (Path directory : loaded.keySet()) {
+			DirectoryEntry parent = loaded.get(directory.getParent());
+			if (parent != null && !directory.equals(root)) {
+				parent.subdirectories.add(directory);
+			}
+		}
+		directories = loaded;
+		return true;
+	}
+
+	/**
+	 * Adds the files of a directory entry to a list of paths.
+	 *
+	 * @param directory the directory
+	 * @param entry     its entry, or null
+	 * @param extension the extension of the files to add, or null
+	 * @param files     the list of paths
+	 */
+	private static void addFiles(Path directory, DirectoryEntry entry, String extension, List<String> files) {
+		if (entry == null) {
+			return;
+		}
+		for (String name : entry.files.keySet()) {
+			if (extension == null || FilenameUtils.getExtension(name).equals(extension)) {
+				files.add(directory.resolve(name).toString());
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the indexed information of a file.
+	 *
+	 * @param file the file
+	 * @return its information, or null if it is not indexed
+	 */
+	private FileInfo getFileInfo(Path file) {
+		Path path = file.toAbsolutePath().normalize();
+		DirectoryEntry entry = directories.get(path.getParent());
+		return entry != null ? entry.files.get(path.getFileName().toString()) : null;
+	}
+
+	/**
+	 * The files of an indexed directory, by name, its subdirectories, its last
+	 * modification time and its watch key.
+	 */
+	private static class DirectoryEntry {
+
+		private final Map<String, FileInfo> files = new ConcurrentHashMap<>();
+		private final Set<Path> subdirectories = ConcurrentHashMap.newKeySet();
+		private volatile long lastModified;
+		private volatile WatchKey key;
+
+		DirectoryEntry(long lastModified, WatchKey key) {
+			this.lastModified = lastModified;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * The size and last modification time of an indexed file.
+	 */
+	private static class FileInfo {
+
+		private final long size;
+		private final long lastModified;
+
+		FileInfo(long size, long lastModified) {
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		FileInfo(BasicFileAttributes attrs) {
+			this(attrs.size(), attrs.lastModifiedTime().toMillis());
+		}
+	}
+}
@@ -0,0 +1,389 @@
+package yga.utilipack;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Walks a directory tree in parallel, listing each directory in its own task on
+ * a fork-join pool, so that the subdirectories of a directory are listed at the
+ * same time. Each directory is listed with
+ * {@link Files#walkFileTree(Path, java.util.Set, int, java.nio.file.FileVisitor)}
+ * limited to its entries, which reads the attributes of each entry once, or not
+ * at all on file systems giving them with the listing.
+ *
+ * <p>
+ * The files are handed to a callback as they are found, or streamed. An
+ * extension or a glob on the file names filters the files during the walk.
+ * Symbolic links to directories are not followed, which keeps a link from
+ * walking a directory twice or looping, and are skipped. Symbolic links to
+ * regular files are found as files, with the attributes of their target;
+ * broken links and other special files are skipped. The files and directories
+ * found are counted in thread-safe counters, which add up over the walks.
+ * Directories that cannot be read are logged and skipped.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * DirectoryWalker walker = new DirectoryWalker(Paths.get("/path/to/directory"));
+ * walker.setExtension("csv");
+ * try (Stream&lt;Path&gt; files = walker.stream()) {
+ * 	files.forEach(System.out::println);
+ * }
+ * </pre>
+ * </p>
+ */
+public class DirectoryWalker {
+
+	private static final Logger logger = LogManager.getLogger(DirectoryWalker.class);
+
+	/** Number of paths a stream can hold ahead of its consumer. */
+	public static final int STREAM_CAPACITY = 1 << 12;
+
+	// Marker of the end of a stream.
+	private static final Path END = FileSystems.getDefault().getPath("");
+
+	private final Path root;
+	private boolean recursive = true;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private String extension;
+	private PathMatcher globMatcher;
+
+	private final LongAdder fileCount = new LongAdder();
+	private final LongAdder directoryCount = new LongAdder();
+
+	/**
+	 * Creates a walker of a directory. The paths found are absolute.
+	 *
+	 * @param root the directory to walk
+	 */
+	public DirectoryWalker(Path root) {
+		this.root = root.toAbsolutePath();
+	}
+
+	/**
+	 * Sets whether to walk the subdirectories. Defaults to true.
+	 *
+	 * @param recursive whether to walk the subdirectories
+	 */
+	public void setRecursive(boolean recursive) {
+		this.recursive = recursive;
+	}
+
+	/**
+	 * Sets the number of threads listing the directories, the number of
+	 * processors by default.
+	 *
+	 * @param parallelism the number of threads, at least 1
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			String errorMessage = "The parallelism must be positive: " + parallelism;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Keeps only the files with an extension, compared as by
+	 * {@link FileUtils#getAllFilesPath(java.io.File, String)}.
+	 *
+	 * @param extension the extension without dot, or null to keep every file
+	 */
+	public void setExtension(String extension) {
+		this.extension = extension;
+	}
+
+	/**
+	 * Keeps only the files whose name matches a glob, such as {@code *.{csv,xlsx}}.
+	 *
+	 * @param glob the glob, or null to keep every file
+	 */
+	public void setGlob(String glob) {
+		this.globMatcher = glob != null ? root.getFileSystem().getPathMatcher("glob:" + glob) : null;
+	}
+
+	/**
+	 * @return the number of files found, filters applied
+	 */
+	public long getFileCount() {
+		return fileCount.sum();
+	}
+
+	/**
+	 * @return the number of directories found, the walked one excluded
+	 */
+	public long getDirectoryCount() {
+		return directoryCount.sum();
+	}
+
+	/**
+	 * Walks the directory, handing each file found to a callback. The callback is
+	 * called from the threads of the pool, possibly at the same time, in no
+	 * particular order.
+	 *
+	 * @param callback the callback receiving the files found
+	 */
+	public void walk(Consumer<Path> callback) {
+		walk(new DirectoryTask(root, (path, attrs) -> callback.accept(path), false));
+	}
+
+	/**
+	 * Walks the directory, handing each regular file found and each directory
+	 * found to a callback with its attributes, as read during the walk, those of
+	 * the target for a symbolic link to a file. The filters only apply to the
+	 * files. A directory is handed to the callback
+	 * before it is listed. The callback is called from the threads of the pool,
+	 * possibly at the same time.
+	 *
+	 * @param callback the callback receiving the files and directories found
+	 */
+	public void walkAttributes(BiConsumer<Path, BasicFileAttributes> callback) {
+		walk(new DirectoryTask(root, callback, true));
+	}
+
+	/**
+	 * Runs a walk on a new pool.
+	 *
+	 * @param task the task listing the walked directory
+	 */
+	private void walk(DirectoryTask task) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(task);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Walks the directory on a pool while the files found are streamed. The
+	 * walk waits while the stream is {@link #STREAM_CAPACITY} files ahead of its
+	 * consumer. The stream should be closed, such as with a try-with-resources
+	 * statement, which stops the walk if it is not over.
+	 *
+	 * @return the stream of the files found, in no particular order
+	 */
+	public Stream<Path> stream() {
+		PathQueue queue = new PathQueue();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		pool.execute(() -> {
+			try {
+				new DirectoryTask(root, (path, attrs) -> queue.put(path), false).invoke();
+			} catch (RuntimeException e) {
+				queue.error = e;
+			} finally {
+				queue.end();
+				pool.shutdown();
+			}
+		});
+		Spliterator<Path> spliterator = Spliterators.spliteratorUnknownSize(queue,
+				Spliterator.NONNULL | Spliterator.DISTINCT);
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			queue.cancel();
+			pool.shutdown();
+		});
+	}
+
+	/**
+	 * Checks if a file passes the filters.
+	 *
+	 * @param file the file
+	 * @return true if the file is kept, false otherwise
+	 */
+	private boolean accept(Path file) {
+		Path name = file.getFileName();
+		if (extension != null && !FilenameUtils.getExtension(name.toString()).equals(extension)) {
+			return false;
+		}
+		return globMatcher == null || globMatcher.matches(name);
+	}
+
+	/**
+	 * Retrieves the attributes of the regular file an entry of a directory
+	 * stands for, reading those of the target of a symbolic link.
+	 *
+	 * @param file  the entry
+	 * @param attrs the attributes of the entry, read without following links
+	 * @return the attributes of the entry if it is a regular file, of its target
+	 *         if it is a symbolic link to a regular file, null otherwise
+	 */
+	static BasicFileAttributes readFileAttributes(Path file, BasicFileAttributes attrs) {
+		if (attrs.isRegularFile()) {
+			return attrs;
+		}
+		if (!attrs.isSymbolicLink()) {
+			return null;
+		}
+		try {
+			BasicFileAttributes targetAttrs = Files.readAttributes(file, BasicFileAttributes.class);
+			return targetAttrs.isRegularFile() ? targetAttrs : null;
+		} catch (IOException e) {
+			return null; // Broken link
+		}
+	}
+
+	/**
+	 * Task listing a directory, then its subdirectories in subtasks.
+	 */
+	private class DirectoryTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+		private final BiConsumer<Path, BasicFileAttributes> callback;
+		private final boolean withDirectories;
+
+		DirectoryTask(Path directory, BiConsumer<Path, BasicFileAttributes> callback, boolean withDirectories) {
+			this.directory = directory;
+			this.callback = callback;
+			this.withDirectories = withDirectories;
+		}
+
+		@Override
+		protected void compute() {
+			List<DirectoryTask> subtasks = new ArrayList<>();
+			try {
+				Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						if (attrs.isDirectory()) {
+							directoryCount.increment();
+							if (withDirectories) {
+								callback.accept(file, attrs);
+							}
+							if (recursive) {
+								subtasks.add(new DirectoryTask(file, callback, withDirectories));
+							}
+						} else if (accept(file)) {
+							BasicFileAttributes fileAttrs = readFileAttributes(file, attrs);
+							if (fileAttrs != null) {
+								fileCount.increment();
+								callback.accept(file, fileAttrs);
+							}
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException e) {
+						logger.warn("Could not read " + file + ": " + e);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				logger.warn("Could not list the directory " + directory + ": " + e);
+			}
+			invokeAll(subtasks);
+		}
+	}
+
+	/**
+	 * Bounded queue between a walk and its stream, iterated by the stream.
+	 */
+	private static class PathQueue implements Iterator<Path> {
+
+		private final BlockingQueue<Path> queue = new ArrayBlockingQueue<>(STREAM_CAPACITY);
+		private volatile boolean cancelled;
+		private volatile RuntimeException error;
+		private Path next;
+
+		/**
+		 * Queues a file found by the walk, waiting while the queue is full.
+		 *
+		 * @param file the file
+		 */
+		void put(Path file) {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			try {
+				queue.put(file);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+		}
+
+		/**
+		 * Marks the end of the walk.
+		 */
+		void end() {
+			try {
+				while (!cancelled && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+					// Wait for the consumer, unless the stream is closed
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Stops the walk, when the stream is closed.
+		 */
+		void cancel() {
+			cancelled = true;
+			queue.clear();
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				try {
+					next = queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new CancellationException();
+				}
+			}
+			if (next == END) {
+				if (error != null) {
+					throw error;
+				}
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public Path next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Path file = next;
+			next = null;
+			return file;
+		}
+	}
+}
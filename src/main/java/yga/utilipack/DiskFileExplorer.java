@@ -2,15 +2,17 @@ package yga.utilipack;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Class to explore and list the contents of a directory. Provides functionality
- * to list all files and directories, optionally including subdirectories.
+ * to list all files and directories, optionally including subdirectories. The
+ * directories are walked in parallel by a {@link DirectoryWalker}, which skips
+ * symbolic links to directories and special files.
  * 
  * <p>
  * Original source:
@@ -70,57 +72,50 @@ public class DiskFileExplorer {
 	}
 
 	/**
-	 * Recursively lists the contents of a directory.
+	 * Lists the contents of a directory, recursively if the explorer includes the
+	 * subdirectories. The files are listed in no particular order, from the
+	 * {@link DirectoryIndex} set in {@link FileUtils} if it indexes the directory.
 	 * 
 	 * @param dir The directory to be listed.
 	 * @return A list of strings representing the absolute paths of the files.
 	 */
 	public List<String> listDirectory(String dir) {
 		File file = new File(dir);
-		File[] files = file.listFiles();
-		List<String> fileList = new ArrayList<>();
-
-		// Check if the directory is not empty
-		if (files != null) {
-			for (File f : files) {
-				if (f.isDirectory()) {
-					dirCount++;
-					logger.debug("Directory found: " + f.getAbsolutePath());
-					if (this.recursivePath) {
-						fileList.addAll(this.listDirectory(f.getAbsolutePath()));
-					}
-				} else {
-					fileCount++;
-					logger.debug("File found: " + f.getAbsolutePath());
-					fileList.add(f.getAbsolutePath());
-				}
-			}
-		} else {
+		if (!file.isDirectory()) {
 			logger.warn("The directory " + dir + " is empty or does not exist.");
+			return new ArrayList<>();
+		}
+
+		DirectoryIndex index = FileUtils.getDirectoryIndex();
+		if (index != null && index.isIndexed(file.toPath())) {
+			List<String> fileList = index.listFiles(file.toPath(), this.recursivePath, null);
+			fileCount += fileList.size();
+			dirCount += index.getDirectoryCount(file.toPath(), this.recursivePath);
+			return fileList;
 		}
 
-		return fileList;
+		DirectoryWalker walker = new DirectoryWalker(file.toPath());
+		walker.setRecursive(this.recursivePath);
+		List<String> fileList = Collections.synchronizedList(new ArrayList<>());
+		walker.walk(path -> fileList.add(path.toString()));
+
+		fileCount += (int) walker.getFileCount();
+		dirCount += (int) walker.getDirectoryCount();
+		logger.debug("{} files and {} directories found in {}", walker.getFileCount(), walker.getDirectoryCount(),
+				dir);
+		return new ArrayList<>(fileList);
 	}
 
 	/**
-	 * Get all the paths of the java files in a given directory.
+	 * Get all the paths of the files with a given extension in a directory and
+	 * its subdirectories, walked in parallel.
 	 * 
 	 * @param inputDirectory The root directory containing the files.
+	 * @param extension      The file extension to filter by.
 	 * @return A list of all the files path in the directory given in parameter and
 	 *         its subdirectory.
 	 */
 	public static List<String> getAllFilesPath(final File inputDirectory, String extension) {
-		List<String> filesPath = new ArrayList<String>();
-		for (final File fileEntry : inputDirectory.listFiles()) {
-			if (fileEntry.isDirectory()) {
-				filesPath.addAll(getAllFilesPath(fileEntry, extension));
-			} else {
-				String file = fileEntry.getAbsolutePath();
-				if (FilenameUtils.getExtension(file).equals(extension)) {
-					filesPath.add(file);
-				}
-			}
-		}
-		return filesPath;
+		return FileUtils.getAllFilesPath(inputDirectory, extension);
 	}
 }
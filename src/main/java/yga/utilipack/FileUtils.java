@@ -4,14 +4,33 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -22,29 +41,198 @@ public class FileUtils {
 
 	private static final Logger logger = LogManager.getLogger(FileUtils.class);
 
+	/** Appenders used by {@link #append(String, String)}, by absolute file path. */
+	private static final Map<Path, AsyncFileAppender> appenders = new ConcurrentHashMap<>();
+
+	/** Whether the shutdown hook closing the appenders was registered. */
+	private static final AtomicBoolean appendersHookRegistered = new AtomicBoolean();
+
+	private static volatile long appendFlushIntervalMillis = 0;
+	private static volatile boolean appendFsync = false;
+
+	/** Index answering the listings of the directories it covers, if set. */
+	private static volatile DirectoryIndex directoryIndex;
+
 	/**
-	 * Appends text to the end of a specified file.
+	 * Appends text to the end of a specified file, which must exist. The text is
+	 * queued to the {@link AsyncFileAppender} of the file, opened on first use and
+	 * kept open, and written in UTF-8 with the other lines queued meanwhile; call
+	 * {@link #flushAppends()} to wait until it is written. The appenders are
+	 * closed when the JVM exits.
+	 * 
+	 * <p>
+	 * The appender of a file is dropped and the file opened again when a write to
+	 * it failed, the error being logged by this call, and when the file was
+	 * deleted or replaced since it was opened, as when it is rotated: the text is
+	 * then appended to the new file, or not at all if the file no longer exists.
+	 * </p>
 	 *
 	 * @param filename the name of the file to append to
 	 * @param text     the text to append
 	 */
 	public static void append(String filename, String text) {
 		try {
-			Path filePath = Paths.get(filename);
-			Files.write(filePath, (text + System.lineSeparator()).getBytes(), java.nio.file.StandardOpenOption.APPEND);
-		} catch (IOException e) {
+			AsyncFileAppender appender = getAppender(filename);
+			try {
+				appender.append(text);
+			} catch (IllegalStateException e) {
+				// Closed meanwhile by closeAppenders(): append to a new appender
+				getAppender(filename).append(text);
+			} catch (InterruptedIOException e) {
+				throw e;
+			} catch (IOException e) {
+				// A previous write failed: drop the appender and open the file again
+				logger.error("A previous append failed, reopening file: " + filename, e);
+				removeAppender(appender.getFile().toPath(), appender);
+				getAppender(filename).append(text);
+			}
+		} catch (IOException | UncheckedIOException | IllegalStateException e) {
 			logger.error("An error occurred while appending to file: " + filename, e);
 		}
 	}
 
 	/**
-	 * Finds all files in the specified folder path.
+	 * Sets the flush interval and the fsync option of the appenders opened from
+	 * now on by {@link #append(String, String)}. See {@link AsyncFileAppender}.
+	 *
+	 * @param flushIntervalMillis the time the writer waits to gather the lines of
+	 *                            a batch, 0 to write them as soon as possible
+	 * @param fsync               whether to force each batch to the disk
+	 */
+	public static void setAppendSettings(long flushIntervalMillis, boolean fsync) {
+		if (flushIntervalMillis < 0) {
+			String errorMessage = "The flush interval must not be negative: " + flushIntervalMillis;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		appendFlushIntervalMillis = flushIntervalMillis;
+		appendFsync = fsync;
+	}
+
+	/**
+	 * Waits until the text appended so far by {@link #append(String, String)} is
+	 * written to the files. The appender of a file whose write failed is dropped,
+	 * the file being opened again by the next append.
+	 *
+	 * @throws IOException if a write failed
+	 */
+	public static void flushAppends() throws IOException {
+		for (Map.Entry<Path, AsyncFileAppender> entry : appenders.entrySet()) {
+			try {
+				entry.getValue().flush();
+			} catch (InterruptedIOException e) {
+				throw e;
+			} catch (IOException e) {
+				removeAppender(entry.getKey(), entry.getValue());
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Writes the text appended so far by {@link #append(String, String)} and
+	 * closes the files. They are opened again by the next appends.
+	 */
+	public static void closeAppenders() {
+		for (Path path : new ArrayList<>(appenders.keySet())) {
+			AsyncFileAppender appender = appenders.remove(path);
+			if (appender != null) {
+				try {
+					appender.close();
+				} catch (IOException e) {
+					logger.error("An error occurred while closing the appender of file: " + path, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the appender of a file, opening it if needed. The shutdown hook closing
+	 * the appenders is registered when the first one is opened.
+	 *
+	 * @param filename the name of the file, which must exist
+	 * @return the appender of the file
+	 * @throws IOException if the file does not exist or cannot be opened
+	 */
+	private static AsyncFileAppender getAppender(String filename) throws IOException {
+		Path filePath = Paths.get(filename).toAbsolutePath().normalize();
+		AsyncFileAppender appender = appenders.get(filePath);
+		if (appender != null) {
+			if (appender.isCurrentFile()) {
+				return appender;
+			}
+			// Deleted or replaced since it was opened
+			logger.info("File deleted or replaced since it was opened for appending: " + filename);
+			removeAppender(filePath, appender);
+		}
+		if (!Files.exists(filePath)) {
+			throw new NoSuchFileException(filename);
+		}
+		if (appendersHookRegistered.compareAndSet(false, true)) {
+			Runtime.getRuntime().addShutdownHook(new Thread(FileUtils::closeAppenders, "appenders-shutdown"));
+		}
+		return appenders.computeIfAbsent(filePath, path -> {
+			try {
+				return new AsyncFileAppender(path.toFile(), StandardCharsets.UTF_8, appendFlushIntervalMillis,
+						appendFsync);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Drops the appender of a file, unless it was already replaced, and closes it.
+	 *
+	 * @param filePath the absolute path of the file
+	 * @param appender the appender to drop
+	 */
+	private static void removeAppender(Path filePath, AsyncFileAppender appender) {
+		if (appenders.remove(filePath, appender)) {
+			try {
+				appender.close();
+			} catch (IOException e) {
+				// The write error was already logged by the appender
+				logger.debug("Appender of file closed after an error: " + filePath);
+			}
+		}
+	}
+
+	/**
+	 * Sets the index answering the listings of {@link #findFiles(String)} and
+	 * {@link DiskFileExplorer#listDirectory(String)} for the directories it
+	 * covers, instead of reading them from the disk.
+	 *
+	 * @param index the started index, or null to read every listing from the disk
+	 */
+	public static void setDirectoryIndex(DirectoryIndex index) {
+		directoryIndex = index;
+	}
+
+	/**
+	 * @return the index answering the listings, or null if none is set
+	 */
+	public static DirectoryIndex getDirectoryIndex() {
+		return directoryIndex;
+	}
+
+	/**
+	 * Finds all files in the specified folder path, symbolic links to regular
+	 * files included. The names are taken from the {@link DirectoryIndex} set, if
+	 * it indexes the folder, from the disk otherwise.
 	 *
 	 * @param folderPath the path to the folder to search for files
 	 * @return a List containing the names of all files found in the folder
 	 * @throws IOException if an I/O error occurs while accessing the folder
 	 */
 	public static List<String> findFiles(String folderPath) throws IOException {
+		DirectoryIndex index = directoryIndex;
+		if (index != null && index.covers(Paths.get(folderPath))) {
+			List<String> fileNames = index.listFileNames(Paths.get(folderPath));
+			if (fileNames != null) {
+				return fileNames;
+			}
+		}
 		try {
 			return Files.list(Paths.get(folderPath)).filter(Files::isRegularFile).map(Path::getFileName)
 					.map(Path::toString).collect(Collectors.toList());
@@ -159,7 +347,8 @@ public class FileUtils {
 	}
 
 	/**
-	 * Used in the log.
+	 * Used in the log. With generations running concurrently, this is the
+	 * directory of any of them: use an {@link OutputSession} per job instead.
 	 * 
 	 * @return the output directory.
 	 */
@@ -193,22 +382,7 @@ public class FileUtils {
 			String suffix, String outputDirectory) {
 		String outputFileName = generateFileName(funcID, extension, prefix, suffix);
 
-		// If there's a specified outputDirectory than use this one, otherwise use
-		// default outputDirectory
-		String finalOutputDirectory = outputDirectory != null ? generateDirectory(outputDirectory)
-				: generateDefaultDirectory(inputFile);
-
-		BufferedWriter writer;
-
-		try {
-			writer = new BufferedWriter(new FileWriter(new File(finalOutputDirectory, outputFileName)));
-			writer.write(fileContent);
-			writer.close();
-		} catch (IOException e) {
-			logger.error("Could not generate a new file called " + outputFileName + " at the location "
-					+ finalOutputDirectory);
-		}
-		OUTPUT_DIRECTORY = finalOutputDirectory;
+		writeFile(outputFileName, fileContent, outputDirectory, inputFile);
 	}
 
 	/**
@@ -226,22 +400,7 @@ public class FileUtils {
 			String outputDirectory) {
 		String outputFileName = generateFileName(inputFile.getName(), extension, null,suffix);
 
-		// If there's a specified outputDirectory than use this one, otherwise use
-		// default outputDirectory
-		String finalOutputDirectory = outputDirectory != null ? generateDirectory(outputDirectory)
-				: generateDefaultDirectory(inputFile);
-
-		BufferedWriter writer;
-
-		try {
-			writer = new BufferedWriter(new FileWriter(new File(finalOutputDirectory, outputFileName)));
-			writer.write(fileContent);
-			writer.close();
-		} catch (IOException e) {
-			logger.error("Could not generate a new file called " + outputFileName + " at the location "
-					+ finalOutputDirectory);
-		}
-		OUTPUT_DIRECTORY = finalOutputDirectory;
+		writeFile(outputFileName, fileContent, outputDirectory, inputFile);
 	}
 
 	/**
@@ -262,48 +421,35 @@ public class FileUtils {
 			String outputDirectory) {
 		String outputFileName = generateFileName(inputFile.getName(), extension, prefix, suffix);
 
-		// If there's a specified outputDirectory than use this one, otherwise use
-		// default outputDirectory
-		String finalOutputDirectory = outputDirectory != null ? generateDirectory(outputDirectory)
-				: generateDefaultDirectory(inputFile);
-
-		BufferedWriter writer;
-
-		try {
-			writer = new BufferedWriter(new FileWriter(new File(finalOutputDirectory, outputFileName)));
-			writer.write(fileContent);
-			writer.close();
-		} catch (IOException e) {
-			logger.error("Could not generate a new file called " + outputFileName + " at the location "
-					+ finalOutputDirectory);
-		}
-		OUTPUT_DIRECTORY = finalOutputDirectory;
+		writeFile(outputFileName, fileContent, outputDirectory, inputFile);
 	}
 
 	
-	private static final String DEFAULT_OUTPUT_DIRECTORY = "Ai4utg/GenerationSBT";
-	private static String OUTPUT_DIRECTORY = DEFAULT_OUTPUT_DIRECTORY;
+	// Size of the buffers of the generated files.
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	static final String DEFAULT_OUTPUT_DIRECTORY = "Ai4utg/GenerationSBT";
+
+	// Last output directory used by the static generation methods, for the logs.
+	// Jobs generating files concurrently should each use an OutputSession.
+	private static volatile String OUTPUT_DIRECTORY = DEFAULT_OUTPUT_DIRECTORY;
 
 	/**
-	 * Get all the paths of the files with a given extension in a directory.
+	 * Get all the paths of the files with a given extension in a directory. The
+	 * directories are walked in parallel by a {@link DirectoryWalker}, the
+	 * extension being checked during the walk, so the paths come in no particular
+	 * order. Symbolic links to directories and special files are skipped.
 	 * 
 	 * @param inputDirectory The root directory containing the files.
 	 * @param extension      The file extension to filter by.
 	 * @return A list of all the file paths in the directory and its subdirectories.
 	 */
 	public static List<String> getAllFilesPath(final File inputDirectory, String extension) {
-		List<String> filesPath = new ArrayList<>();
-		for (final File fileEntry : inputDirectory.listFiles()) {
-			if (fileEntry.isDirectory()) {
-				filesPath.addAll(getAllFilesPath(fileEntry, extension));
-			} else {
-				String file = fileEntry.getAbsolutePath();
-				if (FilenameUtils.getExtension(file).equals(extension)) {
-					filesPath.add(file);
-				}
-			}
-		}
-		return filesPath;
+		DirectoryWalker walker = new DirectoryWalker(inputDirectory.toPath());
+		walker.setExtension(extension);
+		List<String> filesPath = Collections.synchronizedList(new ArrayList<>());
+		walker.walk(path -> filesPath.add(path.toString()));
+		return new ArrayList<>(filesPath);
 	}
 
 	/**
@@ -336,7 +482,8 @@ public class FileUtils {
 	}
 
 	/**
-	 * Helper method to write content to a file.
+	 * Helper method to write content to a file, in the default charset. The file
+	 * is written atomically, see {@link #writeAtomically(File, Charset, ContentWriter)}.
 	 * 
 	 * @param outputFileName  The name of the output file.
 	 * @param fileContent     The content to write into the file.
@@ -344,17 +491,295 @@ public class FileUtils {
 	 * @param inputFile       The original input file.
 	 */
 	public static void writeFile(String outputFileName, String fileContent, String outputDirectory, File inputFile) {
-		String finalOutputDirectory = (outputDirectory != null) ? generateDirectory(outputDirectory)
+		try {
+			writeFile(outputFileName, fileContent, Charset.defaultCharset(), outputDirectory, inputFile);
+		} catch (IOException e) {
+			// Already logged
+		}
+	}
+
+	/**
+	 * Generate a file whose content is streamed by a callback, see
+	 * {@link #generateFile(File, String, String, String, String, String, String)}.
+	 * 
+	 * @param inputFile       The given file from which we will generate another
+	 *                        file.
+	 * @param funcID          The identifier of the function, for naming purpose
+	 * @param content         The callback writing the content of the result file.
+	 * @param charset         The charset of the result file.
+	 * @param extension       The extension of the result file.
+	 * @param prefix          The prefix of the result file name (can be null).
+	 * @param suffix          The suffix of the result file name (can be null).
+	 * @param outputDirectory The output directory to generate the result file.
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void generateFile(File inputFile, String funcID, ContentWriter content, Charset charset,
+			String extension, String prefix, String suffix, String outputDirectory) throws IOException {
+		String outputFileName = generateFileName(funcID, extension, prefix, suffix);
+		writeFile(outputFileName, content, charset, outputDirectory, inputFile);
+	}
+
+	/**
+	 * Generate a file named after the input file, whose content is streamed by a
+	 * callback, see
+	 * {@link #generateFile(File, String, String, String, String, String)}.
+	 * 
+	 * @param inputFile       The given file from which we will generate another
+	 *                        file.
+	 * @param content         The callback writing the content of the result file.
+	 * @param charset         The charset of the result file.
+	 * @param extension       The extension of the result file.
+	 * @param prefix          The prefix of the result file name (can be null).
+	 * @param suffix          The suffix of the result file name (can be null).
+	 * @param outputDirectory The output directory to generate the result file.
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void generateFile(File inputFile, ContentWriter content, Charset charset, String extension,
+			String prefix, String suffix, String outputDirectory) throws IOException {
+		String outputFileName = generateFileName(inputFile.getName(), extension, prefix, suffix);
+		writeFile(outputFileName, content, charset, outputDirectory, inputFile);
+	}
+
+	/**
+	 * Write a file whose content is streamed by a callback into the output
+	 * directory, atomically.
+	 * 
+	 * @param outputFileName  The name of the output file.
+	 * @param content         The callback writing the content of the file.
+	 * @param charset         The charset of the file.
+	 * @param outputDirectory The directory where the file will be generated, or
+	 *                        null for the default one.
+	 * @param inputFile       The original input file.
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeFile(String outputFileName, ContentWriter content, Charset charset,
+			String outputDirectory, File inputFile) throws IOException {
+		writeGeneratedFile(outputFileName, outputDirectory, inputFile,
+				channel -> writeContent(channel, charset, content));
+	}
+
+	/**
+	 * Write a file with a text content into the output directory, atomically. The
+	 * content is encoded in chunks, so a large {@link StringBuilder} is not copied
+	 * into a String first.
+	 * 
+	 * @param outputFileName  The name of the output file.
+	 * @param content         The content of the file.
+	 * @param charset         The charset of the file.
+	 * @param outputDirectory The directory where the file will be generated, or
+	 *                        null for the default one.
+	 * @param inputFile       The original input file.
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeFile(String outputFileName, CharSequence content, Charset charset,
+			String outputDirectory, File inputFile) throws IOException {
+		writeFile(outputFileName, writer -> writeChunks(writer, content), charset, outputDirectory, inputFile);
+	}
+
+	/**
+	 * Write a file with a binary content into the output directory, atomically.
+	 * The bytes from the position to the limit of the buffer are written, and
+	 * consumed.
+	 * 
+	 * @param outputFileName  The name of the output file.
+	 * @param content         The content of the file.
+	 * @param outputDirectory The directory where the file will be generated, or
+	 *                        null for the default one.
+	 * @param inputFile       The original input file.
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeFile(String outputFileName, ByteBuffer content, String outputDirectory, File inputFile)
+			throws IOException {
+		writeGeneratedFile(outputFileName, outputDirectory, inputFile, channel -> writeBuffer(channel, content));
+	}
+
+	/**
+	 * Writes a file atomically: the content is streamed through a channel into a
+	 * temporary file of the same directory, which is moved over the file once
+	 * complete. Readers thus never see a partial file, and a failed write leaves
+	 * the previous file, if any, untouched. The file keeps the permissions of the
+	 * file it replaces, or gets the default permissions of new files. Invalid
+	 * characters are replaced, as by {@link FileWriter}.
+	 * 
+	 * @param file    The file to write.
+	 * @param charset The charset of the file.
+	 * @param content The callback writing the content of the file, the writer
+	 *                being closed after it.
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeAtomically(File file, Charset charset, ContentWriter content) throws IOException {
+		writeAtomically(file.toPath(), channel -> writeContent(channel, charset, content));
+	}
+
+	/**
+	 * Writes a file atomically from a buffer, see
+	 * {@link #writeAtomically(File, Charset, ContentWriter)}. The bytes from the
+	 * position to the limit of the buffer are written, and consumed.
+	 * 
+	 * @param file    The file to write.
+	 * @param content The content of the file.
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeAtomically(File file, ByteBuffer content) throws IOException {
+		writeAtomically(file.toPath(), channel -> writeBuffer(channel, content));
+	}
+
+	/**
+	 * Callback writing the content of a generated file.
+	 */
+	@FunctionalInterface
+	public interface ContentWriter {
+
+		/**
+		 * Writes the content of the file.
+		 * 
+		 * @param writer the buffered writer of the file, closed after the call
+		 * @throws IOException if an I/O error occurs
+		 */
+		void write(Writer writer) throws IOException;
+	}
+
+	/**
+	 * Callback writing the content of a file to its channel.
+	 */
+	@FunctionalInterface
+	interface ChannelContent {
+
+		void write(FileChannel channel) throws IOException;
+	}
+
+	/**
+	 * Writes a generated file into the output directory, creating the directory
+	 * if needed, and records the directory as the output directory.
+	 * 
+	 * @param outputFileName  The name of the output file.
+	 * @param outputDirectory The directory where the file will be generated, or
+	 *                        null for the default one.
+	 * @param inputFile       The original input file.
+	 * @param content         The callback writing the content of the file.
+	 * @throws IOException if the file cannot be written
+	 */
+	private static void writeGeneratedFile(String outputFileName, String outputDirectory, File inputFile,
+			ChannelContent content) throws IOException {
+		// If there's a specified outputDirectory than use this one, otherwise use
+		// default outputDirectory
+		String finalOutputDirectory = outputDirectory != null ? generateDirectory(outputDirectory)
 				: generateDefaultDirectory(inputFile);
-		BufferedWriter writer;
 		try {
-			writer = new BufferedWriter(new FileWriter(new File(finalOutputDirectory, outputFileName)));
-			writer.write(fileContent);
-			writer.close();
+			writeAtomically(new File(finalOutputDirectory, outputFileName).toPath(), content);
 		} catch (IOException e) {
 			logger.error("Could not generate a new file called " + outputFileName + " at the location "
-					+ finalOutputDirectory);
+					+ finalOutputDirectory, e);
+			throw e;
+		} finally {
+			OUTPUT_DIRECTORY = finalOutputDirectory;
+		}
+	}
+
+	/**
+	 * Writes a file through a temporary file moved over it once complete.
+	 * 
+	 * @param path    The file to write.
+	 * @param content The callback writing the content of the file.
+	 * @return the size of the file written, in bytes
+	 * @throws IOException if the file cannot be written
+	 */
+	static long writeAtomically(Path path, ChannelContent content) throws IOException {
+		Path tempFile = createTempFileFor(path);
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				content.write(channel);
+			}
+			long size = Files.size(tempFile);
+			try {
+				Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+			return size;
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tempFile);
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the temporary file of a file written atomically, in the same
+	 * directory. Unlike {@link Files#createTempFile}, which makes it readable by
+	 * its owner only, the temporary file gets the permissions of the file it is to
+	 * replace, or else the default permissions of new files, as with
+	 * {@link FileWriter}.
+	 * 
+	 * @param path The file to write.
+	 * @return The temporary file, empty.
+	 * @throws IOException if the file cannot be created
+	 */
+	static Path createTempFileFor(Path path) throws IOException {
+		Path directory = path.toAbsolutePath().getParent();
+		while (true) {
+			Path tempFile = directory.resolve("." + path.getFileName() + "."
+					+ Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				Files.newByteChannel(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+			} catch (FileAlreadyExistsException e) {
+				continue;
+			}
+			try {
+				if (Files.exists(path) && path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+					Files.setPosixFilePermissions(tempFile, Files.getPosixFilePermissions(path));
+				}
+			} catch (IOException e) {
+				Files.deleteIfExists(tempFile);
+				throw e;
+			}
+			return tempFile;
+		}
+	}
+
+	/**
+	 * Streams the content of a callback to a channel through a buffered writer,
+	 * closed once the content is written.
+	 * 
+	 * @param channel The channel.
+	 * @param charset The charset of the content.
+	 * @param content The callback writing the content.
+	 * @throws IOException if an I/O error occurs
+	 */
+	static void writeContent(FileChannel channel, Charset charset, ContentWriter content)
+			throws IOException {
+		CharsetEncoder encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		Writer writer = new BufferedWriter(Channels.newWriter(channel, encoder, WRITE_BUFFER_SIZE),
+				WRITE_BUFFER_SIZE);
+		content.write(writer);
+		// Closing ends the encoder, replacing a trailing unpaired surrogate
+		writer.close();
+	}
+
+	/**
+	 * Writes a text in chunks, without copying it whole.
+	 * 
+	 * @param writer  The writer.
+	 * @param content The text.
+	 * @throws IOException if an I/O error occurs
+	 */
+	static void writeChunks(Writer writer, CharSequence content) throws IOException {
+		int length = content.length();
+		for (int start = 0; start < length; start += WRITE_BUFFER_SIZE) {
+			writer.append(content, start, Math.min(start + WRITE_BUFFER_SIZE, length));
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of a buffer to a channel.
+	 * 
+	 * @param channel The channel.
+	 * @param content The buffer.
+	 * @throws IOException if an I/O error occurs
+	 */
+	static void writeBuffer(FileChannel channel, ByteBuffer content) throws IOException {
+		while (content.hasRemaining()) {
+			channel.write(content);
 		}
-		OUTPUT_DIRECTORY = finalOutputDirectory;
 	}
 }
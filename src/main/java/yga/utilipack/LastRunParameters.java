@@ -8,10 +8,20 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -20,6 +30,14 @@ import org.apache.logging.log4j.Logger;
  * The `LastRunParameters` class handles loading and saving of configuration
  * data from a file. It provides methods to load configuration data into memory
  * and save updated configuration data back to the file.
+ *
+ * <p>
+ * It also keeps the ingestion checkpoints of append-only inputs in a separate
+ * file: for each input, the offset up to which it was processed and a
+ * fingerprint of its content before that offset, used by
+ * {@link CsvUtils#readAppendedRows(String, boolean, java.util.function.Consumer)}
+ * to only read the data appended since the last run.
+ * </p>
  */
 public class LastRunParameters {
 
@@ -31,6 +49,15 @@ public class LastRunParameters {
 	/** Array to store loaded configuration data. */
 	public static String[] words;
 
+	/** The file path where ingestion checkpoints are loaded from and saved to. */
+	private static String checkpointFile;
+
+	/** Loaded ingestion checkpoints, by canonical path of their input. */
+	private static final Map<String, Checkpoint> checkpoints = new LinkedHashMap<>();
+
+	/** Whether the checkpoints of the checkpoint file are loaded. */
+	private static boolean checkpointsLoaded;
+
 	/**
 	 * Sets the file path for loading and saving configuration data.
 	 *
@@ -118,4 +145,220 @@ public class LastRunParameters {
 		return words[i];
 	}
 
+	/**
+	 * Sets the file path for loading and saving ingestion checkpoints.
+	 *
+	 * @param checkpointFile the file path to set
+	 */
+	public static synchronized void setCheckpointFile(String checkpointFile) {
+		LastRunParameters.checkpointFile = checkpointFile;
+		checkpoints.clear();
+		checkpointsLoaded = false;
+	}
+
+	/**
+	 * Loads the ingestion checkpoints from the file specified by
+	 * `checkpointFile`, one per line as its offset, head checksum, tail checksum
+	 * and input path, semicolon-separated. A missing file holds no checkpoint.
+	 *
+	 * @throws IOException if the file cannot be read or is malformed
+	 */
+	public static synchronized void loadCheckpoints() throws IOException {
+		Path path = getCheckpointPath();
+		checkpoints.clear();
+		if (Files.exists(path)) {
+			try {
+				for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+					if (line.isEmpty()) {
+						continue;
+					}
+					String[] values = line.split(";", 4);
+					if (values.length < 4) {
+						throw new IOException("Malformed checkpoint line: " + line);
+					}
+					checkpoints.put(values[3], new Checkpoint(Long.parseLong(values[0]), Long.parseLong(values[1]),
+							Long.parseLong(values[2])));
+				}
+			} catch (IOException | NumberFormatException e) {
+				checkpoints.clear();
+				logger.error("Failed to load checkpoints: " + e.getMessage(), e);
+				throw e instanceof IOException ? (IOException) e : new IOException(e);
+			}
+		}
+		checkpointsLoaded = true;
+		logger.info("{} checkpoints loaded successfully.", checkpoints.size());
+	}
+
+	/**
+	 * Gets the ingestion checkpoint of an input, loading the checkpoint file on
+	 * first use.
+	 *
+	 * @param input the input file
+	 * @return the checkpoint, or null if the input has none
+	 * @throws IOException if the checkpoint file cannot be read
+	 */
+	public static synchronized Checkpoint getCheckpoint(File input) throws IOException {
+		if (!checkpointsLoaded) {
+			loadCheckpoints();
+		}
+		return checkpoints.get(input.getCanonicalPath());
+	}
+
+	/**
+	 * Sets the ingestion checkpoint of an input to an offset, taking the
+	 * fingerprint of its content before the offset. The checkpoint is saved by
+	 * {@link #saveCheckpoints()}.
+	 *
+	 * @param input  the input file
+	 * @param offset the offset up to which the input was processed
+	 * @return the checkpoint
+	 * @throws IOException if the input or the checkpoint file cannot be read
+	 */
+	public static synchronized Checkpoint setCheckpoint(File input, long offset) throws IOException {
+		if (!checkpointsLoaded) {
+			loadCheckpoints();
+		}
+		Checkpoint checkpoint = Checkpoint.of(input, offset);
+		checkpoints.put(input.getCanonicalPath(), checkpoint);
+		return checkpoint;
+	}
+
+	/**
+	 * Saves the ingestion checkpoints to the file specified by `checkpointFile`.
+	 * They are written to a temporary file first, then moved over the checkpoint
+	 * file, so that a failed save leaves the previous checkpoints.
+	 *
+	 * @throws IOException if the checkpoints cannot be saved
+	 */
+	public static synchronized void saveCheckpoints() throws IOException {
+		Path path = getCheckpointPath();
+		List<String> lines = new ArrayList<>(checkpoints.size());
+		for (Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+			Checkpoint checkpoint = entry.getValue();
+			lines.add(checkpoint.offset + ";" + checkpoint.headChecksum + ";" + checkpoint.tailChecksum + ";"
+					+ entry.getKey());
+		}
+		// Created with the default permissions, unlike with Files.createTempFile
+		Path tempFile = FileUtils.createTempFileFor(path);
+		try {
+			Files.write(tempFile, lines, StandardCharsets.UTF_8);
+			try {
+				Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+			logger.info("Checkpoints saved successfully.");
+		} catch (IOException e) {
+			logger.error("Failed to save checkpoints: " + e.getMessage(), e);
+			Files.deleteIfExists(tempFile);
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the path of the checkpoint file, which must be set.
+	 *
+	 * @return the path of the checkpoint file
+	 */
+	private static Path getCheckpointPath() {
+		if (checkpointFile == null) {
+			String errorMessage = "The checkpoint file is not set";
+			logger.error(errorMessage);
+			throw new IllegalStateException(errorMessage);
+		}
+		return Paths.get(checkpointFile);
+	}
+
+	/**
+	 * Ingestion checkpoint of an append-only input: the offset up to which it was
+	 * processed, and the CRC-32 checksums of the first and last
+	 * {@link #FINGERPRINT_LENGTH} bytes before that offset. The input still
+	 * matches the checkpoint if it was only appended to; a truncated or
+	 * rewritten input does not.
+	 */
+	public static final class Checkpoint {
+
+		/** Number of bytes taken into each checksum of the fingerprint. */
+		public static final int FINGERPRINT_LENGTH = 4096;
+
+		private final long offset;
+		private final long headChecksum;
+		private final long tailChecksum;
+
+		private Checkpoint(long offset, long headChecksum, long tailChecksum) {
+			this.offset = offset;
+			this.headChecksum = headChecksum;
+			this.tailChecksum = tailChecksum;
+		}
+
+		/**
+		 * Takes the checkpoint of an input at an offset.
+		 *
+		 * @param input  the input file
+		 * @param offset the offset up to which the input was processed
+		 * @return the checkpoint
+		 * @throws IOException if the input cannot be read or is shorter than the
+		 *                     offset
+		 */
+		static Checkpoint of(File input, long offset) throws IOException {
+			try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+				if (offset < 0 || channel.size() < offset) {
+					throw new IOException("Checkpoint offset " + offset + " out of the input " + input);
+				}
+				return new Checkpoint(offset, checksum(channel, 0, Math.min(offset, FINGERPRINT_LENGTH)),
+						checksum(channel, Math.max(0, offset - FINGERPRINT_LENGTH), offset));
+			}
+		}
+
+		/**
+		 * @return the offset up to which the input was processed
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Checks if an input is the one of the checkpoint, only appended to since:
+		 * it is not shorter than the offset and its fingerprint is unchanged.
+		 *
+		 * @param input the input file
+		 * @return true if the input matches the checkpoint, false otherwise
+		 * @throws IOException if the input cannot be read
+		 */
+		public boolean matches(File input) throws IOException {
+			try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+				return channel.size() >= offset
+						&& checksum(channel, 0, Math.min(offset, FINGERPRINT_LENGTH)) == headChecksum
+						&& checksum(channel, Math.max(0, offset - FINGERPRINT_LENGTH), offset) == tailChecksum;
+			}
+		}
+
+		/**
+		 * Computes the CRC-32 checksum of a range of a file.
+		 *
+		 * @param channel the channel of the file
+		 * @param start   the offset of the range
+		 * @param end     the offset of the end of the range
+		 * @return the checksum
+		 * @throws IOException if the range cannot be read
+		 */
+		private static long checksum(FileChannel channel, long start, long end) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of file at offset " + (start + buffer.position()));
+				}
+			}
+			CRC32 crc = new CRC32();
+			crc.update(buffer.array(), 0, buffer.capacity());
+			return crc.getValue();
+		}
+
+		@Override
+		public String toString() {
+			return "Checkpoint [offset=" + offset + ", headChecksum=" + headChecksum + ", tailChecksum="
+					+ tailChecksum + "]";
+		}
+	}
+
 }
@@ -0,0 +1,233 @@
+package yga.utilipack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Output location of a file generation job, with its own directory, naming
+ * rules and metrics, replacing the static output directory of
+ * {@link FileUtils} for jobs running concurrently. A session is safe to use from
+ * many threads: each file is written atomically through its own temporary
+ * file, as by {@link FileUtils#writeAtomically(File, Charset, FileUtils.ContentWriter)},
+ * and the metrics are thread-safe counters.
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * OutputSession session = new OutputSession("reports/2024-06", StandardCharsets.UTF_8);
+ * session.setSuffix("_report");
+ * inputFiles.parallelStream().forEach(inputFile -&gt; {
+ * 	try {
+ * 		session.generateFile(inputFile, ".csv", writer -&gt; writeReport(inputFile, writer));
+ * 	} catch (IOException e) {
+ * 		// Already logged and counted
+ * 	}
+ * });
+ * logger.info(session.getFileCount() + " reports written to " + session.getOutputDirectory());
+ * </pre>
+ * </p>
+ */
+public class OutputSession {
+
+	private static final Logger logger = LogManager.getLogger(OutputSession.class);
+
+	private final Path outputDirectory;
+	private final Charset charset;
+	private volatile String prefix;
+	private volatile String suffix;
+
+	private final LongAdder fileCount = new LongAdder();
+	private final LongAdder byteCount = new LongAdder();
+	private final LongAdder failureCount = new LongAdder();
+
+	/**
+	 * Creates a session writing to the default output directory of
+	 * {@link FileUtils}, in the default charset.
+	 */
+	public OutputSession() {
+		this(null, Charset.defaultCharset());
+	}
+
+	/**
+	 * Creates a session writing to a directory, created with its parents on the
+	 * first file written.
+	 *
+	 * @param outputDirectory the output directory, or null for the default one of
+	 *                        {@link FileUtils}
+	 * @param charset         the charset of the text files
+	 */
+	public OutputSession(String outputDirectory, Charset charset) {
+		this.outputDirectory = Paths
+				.get(outputDirectory != null ? outputDirectory : FileUtils.DEFAULT_OUTPUT_DIRECTORY);
+		this.charset = charset;
+	}
+
+	/**
+	 * Sets the prefix of the file names generated by the session.
+	 *
+	 * @param prefix the prefix, or null for none
+	 */
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Sets the suffix of the file names generated by the session, added before the
+	 * extension.
+	 *
+	 * @param suffix the suffix, or null for none
+	 */
+	public void setSuffix(String suffix) {
+		this.suffix = suffix;
+	}
+
+	/**
+	 * @return the output directory of the session
+	 */
+	public String getOutputDirectory() {
+		return outputDirectory.toString();
+	}
+
+	/**
+	 * @return the charset of the text files
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * @return the number of files written
+	 */
+	public long getFileCount() {
+		return fileCount.sum();
+	}
+
+	/**
+	 * @return the number of bytes written, over all the files
+	 */
+	public long getByteCount() {
+		return byteCount.sum();
+	}
+
+	/**
+	 * @return the number of files which could not be written
+	 */
+	public long getFailureCount() {
+		return failureCount.sum();
+	}
+
+	/**
+	 * Creates the name of a generated file with the prefix and suffix of the
+	 * session, as by
+	 * {@link FileUtils#generateFileName(String, String, String, String)}.
+	 *
+	 * @param identifier the file name or function identifier
+	 * @param extension  the extension of the file, with its dot
+	 * @return the name of the file
+	 */
+	public String generateFileName(String identifier, String extension) {
+		return FileUtils.generateFileName(identifier, extension, prefix, suffix);
+	}
+
+	/**
+	 * Generates a file named after an identifier, whose content is streamed by a
+	 * callback.
+	 *
+	 * @param identifier the file name or function identifier
+	 * @param extension  the extension of the file, with its dot
+	 * @param content    the callback writing the content of the file
+	 * @return the file written
+	 * @throws IOException if the file cannot be written
+	 */
+	public File generateFile(String identifier, String extension, FileUtils.ContentWriter content)
+			throws IOException {
+		return writeFile(generateFileName(identifier, extension), content);
+	}
+
+	/**
+	 * Generates a file named after an input file, whose content is streamed by a
+	 * callback.
+	 *
+	 * @param inputFile the file the generated file derives from
+	 * @param extension the extension of the file, with its dot
+	 * @param content   the callback writing the content of the file
+	 * @return the file written
+	 * @throws IOException if the file cannot be written
+	 */
+	public File generateFile(File inputFile, String extension, FileUtils.ContentWriter content)
+			throws IOException {
+		return writeFile(generateFileName(inputFile.getName(), extension), content);
+	}
+
+	/**
+	 * Writes a file whose content is streamed by a callback in the output
+	 * directory.
+	 *
+	 * @param fileName the name of the file
+	 * @param content  the callback writing the content of the file
+	 * @return the file written
+	 * @throws IOException if the file cannot be written
+	 */
+	public File writeFile(String fileName, FileUtils.ContentWriter content) throws IOException {
+		return write(fileName, channel -> FileUtils.writeContent(channel, charset, content));
+	}
+
+	/**
+	 * Writes a file with a text content in the output directory.
+	 *
+	 * @param fileName the name of the file
+	 * @param content  the content of the file
+	 * @return the file written
+	 * @throws IOException if the file cannot be written
+	 */
+	public File writeFile(String fileName, CharSequence content) throws IOException {
+		return writeFile(fileName, writer -> FileUtils.writeChunks(writer, content));
+	}
+
+	/**
+	 * Writes a file with a binary content in the output directory. The bytes from
+	 * the position to the limit of the buffer are written, and consumed.
+	 *
+	 * @param fileName the name of the file
+	 * @param content  the content of the file
+	 * @return the file written
+	 * @throws IOException if the file cannot be written
+	 */
+	public File writeFile(String fileName, ByteBuffer content) throws IOException {
+		return write(fileName, channel -> FileUtils.writeBuffer(channel, content));
+	}
+
+	/**
+	 * Writes a file atomically in the output directory, counting it in the
+	 * metrics.
+	 *
+	 * @param fileName the name of the file
+	 * @param content  the callback writing the content of the file
+	 * @return the file written
+	 * @throws IOException if the file cannot be written
+	 */
+	private File write(String fileName, FileUtils.ChannelContent content) throws IOException {
+		Path path = outputDirectory.resolve(fileName);
+		try {
+			Files.createDirectories(outputDirectory);
+			byteCount.add(FileUtils.writeAtomically(path, content));
+			fileCount.increment();
+			return path.toFile();
+		} catch (IOException | RuntimeException e) {
+			failureCount.increment();
+			logger.error("Could not generate a new file called " + fileName + " at the location "
+					+ outputDirectory, e);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package yga.utilipack;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.util.LocaleUtil;
+
+/**
+ * Row filter compiled once per sheet. Header names are resolved to column
+ * indices and the value to search for is parsed when the filter is built, so
+ * checking a row does no regular expression work and does not turn the cells
+ * into strings.
+ *
+ * <p>
+ * The filter used by {@link XlsxUtils#copyRowsToOutputSheet} is built with
+ * {@link #compile(Map, String[], String)}. Other filters can be built from the
+ * {@link #isBlank(int)} and {@link #isEqualTo(int, String)} predicates combined
+ * with {@link #and(RowFilter...)} and {@link #or(RowFilter...)}.
+ * </p>
+ */
+public abstract class RowFilter {
+
+	/**
+	 * Checks if a row of an in-memory workbook matches the filter.
+	 *
+	 * @param row the row to check
+	 * @return true if the row matches, false otherwise
+	 */
+	public abstract boolean matches(Row row);
+
+	/**
+	 * Checks if a streamed row matches the filter.
+	 *
+	 * @param row the row to check
+	 * @return true if the row matches, false otherwise
+	 */
+	public abstract boolean matches(XlsxEventReader.EventRow row);
+
+	/**
+	 * Compiles the filter of {@link XlsxUtils#copyRowsToOutputSheet}: a row
+	 * matches if, in one of the checked columns, the cell is empty or its text
+	 * equals the specific value.
+	 *
+	 * @param headerMap      the map of normalized header values to column indices
+	 * @param columnsToCheck the columns to check based on header values
+	 * @param specificValue  the specific value to search for (can be null or empty)
+	 * @return the compiled filter
+	 */
+	public static RowFilter compile(Map<String, Integer> headerMap, String[] columnsToCheck, String specificValue) {
+		Set<Integer> columnIndexes = new LinkedHashSet<>();
+		for (String columnHeader : columnsToCheck) {
+			Integer columnIndex = headerMap.get(XlsxUtils.normalizeHeaderName(columnHeader));
+			if (columnIndex != null && columnIndex >= 0) { // Ensure columnIndex is valid
+				columnIndexes.add(columnIndex);
+			}
+		}
+
+		List<RowFilter> predicates = new ArrayList<>();
+		for (int columnIndex : columnIndexes) {
+			if (specificValue != null && !specificValue.isEmpty()) {
+				predicates.add(or(isBlank(columnIndex), isEqualTo(columnIndex, specificValue)));
+			} else {
+				predicates.add(isBlank(columnIndex));
+			}
+		}
+		return or(predicates.toArray(new RowFilter[0]));
+	}
+
+	/**
+	 * Creates a predicate matching the rows whose cell is missing, blank or an
+	 * empty string.
+	 *
+	 * @param columnIndex the 0-based column index
+	 * @return the predicate
+	 */
+	public static RowFilter isBlank(int columnIndex) {
+		return new BlankPredicate(columnIndex);
+	}
+
+	/**
+	 * Creates a predicate matching the rows whose cell text equals a value, the
+	 * text of a cell being the one given by {@code Cell.toString()}. The value is
+	 * parsed once, so numeric, boolean and date cells are compared on their typed
+	 * value.
+	 *
+	 * @param columnIndex the 0-based column index
+	 * @param value       the value to compare with
+	 * @return the predicate
+	 */
+	public static RowFilter isEqualTo(int columnIndex, String value) {
+		return new EqualsPredicate(columnIndex, value);
+	}
+
+	/**
+	 * Combines filters so that a row matches if it matches all of them.
+	 *
+	 * @param filters the filters to combine
+	 * @return the combined filter, matching every row if no filter is given
+	 */
+	public static RowFilter and(RowFilter... filters) {
+		return filters.length == 1 ? filters[0] : new AndFilter(filters);
+	}
+
+	/**
+	 * Combines filters so that a row matches if it matches one of them.
+	 *
+	 * @param filters the filters to combine
+	 * @return the combined filter, matching no row if no filter is given
+	 */
+	public static RowFilter or(RowFilter... filters) {
+		return filters.length == 1 ? filters[0] : new OrFilter(filters);
+	}
+
+	/**
+	 * Filter matching the rows matching all its filters.
+	 */
+	private static class AndFilter extends RowFilter {
+
+		private final RowFilter[] filters;
+
+		AndFilter(RowFilter[] filters) {
+			this.filters = Arrays.copyOf(filters, filters.length);
+		}
+
+		@Override
+		public boolean matches(Row row) {
+			for (RowFilter filter : filters) {
+				if (!filter.matches(row)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean matches(XlsxEventReader.EventRow row) {
+			for (RowFilter filter : filters) {
+				if (!filter.matches(row)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Filter matching the rows matching one of its filters.
+	 */
+	private static class OrFilter extends RowFilter {
+
+		private final RowFilter[] filters;
+
+		OrFilter(RowFilter[] filters) {
+			this.filters = Arrays.copyOf(filters, filters.length);
+		}
+
+		@Override
+		public boolean matches(Row row) {
+			for (RowFilter filter : filters) {
+				if (filter.matches(row)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public boolean matches(XlsxEventReader.EventRow row) {
+			for (RowFilter filter : filters) {
+				if (filter.matches(row)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Predicate matching missing, blank and empty string cells.
+	 */
+	private static class BlankPredicate extends RowFilter {
+
+		private final int columnIndex;
+
+		BlankPredicate(int columnIndex) {
+			this.columnIndex = columnIndex;
+		}
+
+		@Override
+		public boolean matches(Row row) {
+			Cell cell = row.getCell(columnIndex);
+			if (cell == null) {
+				return true;
+			}
+			switch (cell.getCellType()) {
+			case BLANK:
+				return true;
+			case STRING:
+				return cell.getStringCellValue().isEmpty();
+			default:
+				return false;
+			}
+		}
+
+		@Override
+		public boolean matches(XlsxEventReader.EventRow row) {
+			switch (row.getCellType(columnIndex)) {
+			case BLANK:
+				return true;
+			case STRING:
+				return row.getStringValue(columnIndex).isEmpty();
+			default:
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Predicate matching the cells whose text equals a value.
+	 */
+	private static class EqualsPredicate extends RowFilter {
+
+		private final int columnIndex;
+
+		// The value as text, compared with string, formula and error cells.
+		private final String text;
+
+		// Whether the value is the text of a number, and the bits of that number.
+		private final boolean isNumber;
+		private final long numberBits;
+
+		// Whether the value is the text of a date, and the bounds of that day.
+		private final boolean isDate;
+		private final long dayStart;
+		private final long dayEnd;
+
+		EqualsPredicate(int columnIndex, String value) {
+			this.columnIndex = columnIndex;
+			this.text = value;
+
+			// Numeric cells print as Double.toString(), so only that form can match
+			double number = 0;
+			boolean parsedNumber = false;
+			try {
+				number = Double.parseDouble(value);
+				parsedNumber = Double.toString(number).equals(value);
+			} catch (NumberFormatException e) {
+				parsedNumber = false;
+			}
+			this.isNumber = parsedNumber;
+			this.numberBits = Double.doubleToLongBits(number);
+
+			// Date cells print as dd-MMM-yyyy, so they match any time of that day
+			long start = 0;
+			long end = 0;
+			boolean parsedDate = false;
+			SimpleDateFormat sdf = new SimpleDateFormat("dd-MMM-yyyy", LocaleUtil.getUserLocale());
+			sdf.setTimeZone(LocaleUtil.getUserTimeZone());
+			sdf.setLenient(false);
+			try {
+				Date day = sdf.parse(value);
+				if (sdf.format(day).equals(value)) {
+					Calendar calendar = Calendar.getInstance(LocaleUtil.getUserTimeZone(), LocaleUtil.getUserLocale());
+					calendar.setTime(day);
+					start = calendar.getTimeInMillis();
+					calendar.add(Calendar.DAY_OF_MONTH, 1);
+					end = calendar.getTimeInMillis();
+					parsedDate = true;
+				}
+			} catch (ParseException e) {
+				parsedDate = false;
+			}
+			this.isDate = parsedDate;
+			this.dayStart = start;
+			this.dayEnd = end;
+		}
+
+		@Override
+		public boolean matches(Row row) {
+			Cell cell = row.getCell(columnIndex);
+			if (cell == null) {
+				return false;
+			}
+			switch (cell.getCellType()) {
+			case STRING:
+				return text.equals(cell.getStringCellValue());
+			case NUMERIC:
+				if (!isNumber && !isDate) {
+					return false;
+				}
+				if (DateUtil.isCellDateFormatted(cell)) {
+					return isDate && isInDay(cell.getDateCellValue());
+				}
+				return isNumber && Double.doubleToLongBits(cell.getNumericCellValue()) == numberBits;
+			case BOOLEAN:
+				return text.equals(cell.getBooleanCellValue() ? "TRUE" : "FALSE");
+			case FORMULA:
+				return text.equals(cell.getCellFormula());
+			case ERROR:
+				return text.equals(FormulaError.forInt(cell.getErrorCellValue()).getString());
+			default:
+				return false;
+			}
+		}
+
+		@Override
+		public boolean matches(XlsxEventReader.EventRow row) {
+			CellType cellType = row.getCellType(columnIndex);
+			switch (cellType) {
+			case STRING:
+			case ERROR:
+				return text.equals(row.getStringValue(columnIndex));
+			case NUMERIC:
+				if (!isNumber && !isDate) {
+					return false;
+				}
+				if (row.isDate(columnIndex)) {
+					return isDate && isInDay(row.getDateValue(columnIndex));
+				}
+				return isNumber && Double.doubleToLongBits(row.getNumericValue(columnIndex)) == numberBits;
+			case BOOLEAN:
+				return text.equals(row.getBooleanValue(columnIndex) ? "TRUE" : "FALSE");
+			default:
+				return false;
+			}
+		}
+
+		/**
+		 * Checks if a date falls within the day of the value.
+		 *
+		 * @param date the date to check
+		 * @return true if the date is on that day, false otherwise
+		 */
+		private boolean isInDay(Date date) {
+			long time = date.getTime();
+			return time >= dayStart && time < dayEnd;
+		}
+	}
+}
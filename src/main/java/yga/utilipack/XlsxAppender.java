@@ -0,0 +1,614 @@
+package yga.utilipack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Appends rows to a sheet of an existing XLSX file without loading the
+ * workbook. Instead of {@link XlsxUtils#readExcelFile(String)},
+ * {@link XlsxUtils#copyRowsToOutputSheet} and
+ * {@link XlsxUtils#writeExcelFile(Workbook, String)}, whose cost grows with the
+ * whole history kept in the output file, the package is rewritten entry by
+ * entry: every part other than the target sheet (other sheets, shared strings,
+ * styles...) is copied still compressed, and the target sheet XML is streamed
+ * through once, the new rows being inserted before the end of its
+ * {@code sheetData} element.
+ *
+ * <p>
+ * The appended strings are written inline, so the shared strings table is left
+ * untouched, and the appended cells take the style of the cell of the same
+ * column in the last row of the sheet, so the styles table is not modified
+ * either. Date cells of columns without such a style use the first date style of
+ * the workbook. The file is replaced atomically once the new package has been
+ * written.
+ * </p>
+ *
+ * <p>
+ * The dimension of the sheet and the ranges of its conditional formatting,
+ * auto filter and tables are not extended. When the file or the sheet does not
+ * exist yet, the rows are written with the in-memory workbook.
+ * </p>
+ */
+public class XlsxAppender {
+
+	private static final Logger logger = LogManager.getLogger(XlsxAppender.class);
+
+	/** Size of the buffer used to stream the sheet XML. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** Number of bytes kept available after a tag start to read its name. */
+	private static final int TAG_LOOKAHEAD = 256;
+
+	/** Size of the rows XML written at once. */
+	private static final int ROWS_CHUNK_SIZE = 32 * 1024;
+
+	private static final byte[] ROW_TAG = "row".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] SHEET_DATA_TAG = "sheetData".getBytes(StandardCharsets.US_ASCII);
+
+	private static final Pattern ROW_NUMBER = Pattern.compile("^<(?:[\\w.-]+:)?row\\b[^>]*?\\sr=\"(\\d+)\"");
+	private static final Pattern CELL_TAG = Pattern.compile("<(?:[\\w.-]+:)?c\\b([^>]*)>");
+	private static final Pattern CELL_COLUMN = Pattern.compile("\\sr=\"([A-Z]+)\\d+\"");
+	private static final Pattern CELL_STYLE = Pattern.compile("\\ss=\"(\\d+)\"");
+
+	/**
+	 * Appends the data rows of a source sheet to a sheet of an XLSX file, with the
+	 * same row filter as {@link XlsxUtils#copyRowsToOutputSheet}: the header row is
+	 * only written if the target sheet is empty, and the data rows copied are the
+	 * ones with an empty cell, or a cell equal to the specific value, in one of the
+	 * checked columns. The file is left untouched if no row matches.
+	 *
+	 * @param sourceSheet     the source sheet
+	 * @param outputFile      the XLSX file to append to, created if it does not
+	 *                        exist
+	 * @param targetSheetName the name of the sheet to append to, created if it does
+	 *                        not exist
+	 * @param columnsToCheck  the columns to check based on header values
+	 * @param specificValue   the specific value to search for (can be null or
+	 *                        empty)
+	 * @return the number of data rows appended
+	 * @throws IOException if an I/O error occurs or the file is not a valid XLSX
+	 *                     file
+	 */
+	public static int appendRowsToExcelFile(Sheet sourceSheet, File outputFile, String targetSheetName,
+			String[] columnsToCheck, String specificValue) throws IOException {
+		if (!outputFile.exists()) {
+			return appendWithWorkbook(sourceSheet, outputFile, targetSheetName, columnsToCheck, specificValue);
+		}
+
+		String partName;
+		int dateStyleIndex;
+		try (XlsxEventReader reader = new XlsxEventReader(outputFile)) {
+			partName = reader.getSheetPartName(targetSheetName);
+			dateStyleIndex = reader.findDateStyleIndex();
+		}
+		if (partName == null) {
+			return appendWithWorkbook(sourceSheet, outputFile, targetSheetName, columnsToCheck, specificValue);
+		}
+
+		RowFilter rowFilter = RowFilter.compile(XlsxUtils.getHeaderMap(sourceSheet), columnsToCheck, specificValue);
+		List<Row> rows = new ArrayList<>();
+		for (Row sourceRow : sourceSheet) {
+			if (sourceRow.getRowNum() != 0 && rowFilter.matches(sourceRow)) {
+				rows.add(sourceRow);
+			}
+		}
+		if (rows.isEmpty()) {
+			logger.info("No row to append to sheet " + targetSheetName + " of " + outputFile);
+			return 0;
+		}
+
+		SheetDataSplicer splicer = new SheetDataSplicer(sourceSheet.getRow(0), rows, dateStyleIndex);
+		rewritePackage(outputFile, partName.startsWith("/") ? partName.substring(1) : partName, splicer);
+		logger.info(rows.size() + " rows appended to sheet " + targetSheetName + " of " + outputFile);
+		return rows.size();
+	}
+
+	/**
+	 * Appends rows by loading the whole workbook, used when the file or the
+	 * target sheet does not exist yet.
+	 *
+	 * @param sourceSheet     the source sheet
+	 * @param outputFile      the XLSX file to append to
+	 * @param targetSheetName the name of the sheet to append to
+	 * @param columnsToCheck  the columns to check based on header values
+	 * @param specificValue   the specific value to search for (can be null or
+	 *                        empty)
+	 * @return the number of data rows appended
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static int appendWithWorkbook(Sheet sourceSheet, File outputFile, String targetSheetName,
+			String[] columnsToCheck, String specificValue) throws IOException {
+		try (Workbook workbook = outputFile.exists() ? XlsxUtils.readExcelFile(outputFile.getPath())
+				: new XSSFWorkbook()) {
+			Sheet targetSheet = workbook.getSheet(targetSheetName);
+			if (targetSheet == null) {
+				targetSheet = workbook.createSheet(targetSheetName);
+			}
+			int firstRowIndex = Math.max(XlsxUtils.getLastRowIndex(targetSheet), 0);
+			XlsxUtils.copyRowsToOutputSheet(sourceSheet, targetSheet, workbook, columnsToCheck,
+					new HashSet<String>(), specificValue, true);
+			XlsxUtils.writeExcelFile(workbook, outputFile.getPath());
+			return Math.max(XlsxUtils.getLastRowIndex(targetSheet), 0) - firstRowIndex;
+		}
+	}
+
+	/**
+	 * Rewrites a package, copying every entry still compressed except the sheet
+	 * entry, which is streamed through the splicer, then replaces the file with
+	 * the new package.
+	 *
+	 * @param xlsxFile  the XLSX file
+	 * @param entryName the name of the zip entry of the sheet
+	 * @param splicer   the splicer inserting the rows into the sheet XML
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void rewritePackage(File xlsxFile, String entryName, SheetDataSplicer splicer)
+			throws IOException {
+		File tempFile = File.createTempFile(xlsxFile.getName(), ".tmp", xlsxFile.getAbsoluteFile().getParentFile());
+		boolean replaced = false;
+		try {
+			try (ZipFile zipFile = new ZipFile(xlsxFile); ZipArchiveOutputStream zos = new ZipArchiveOutputStream(tempFile)) {
+				boolean found = false;
+				Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+				while (entries.hasMoreElements()) {
+					ZipArchiveEntry entry = entries.nextElement();
+					if (entry.getName().equals(entryName)) {
+						ZipArchiveEntry sheetEntry = new ZipArchiveEntry(entryName);
+						sheetEntry.setMethod(ZipEntry.DEFLATED);
+						sheetEntry.setTime(System.currentTimeMillis());
+						zos.putArchiveEntry(sheetEntry);
+						try (InputStream sheetData = zipFile.getInputStream(entry)) {
+							splicer.splice(sheetData, zos);
+						}
+						zos.closeArchiveEntry();
+						found = true;
+					} else {
+						try (InputStream rawData = zipFile.getRawInputStream(entry)) {
+							zos.addRawArchiveEntry(entry, rawData);
+						}
+					}
+				}
+				if (!found) {
+					throw new IOException("Entry " + entryName + " not found in " + xlsxFile);
+				}
+			}
+			try {
+				Files.move(tempFile.toPath(), xlsxFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), xlsxFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			replaced = true;
+		} finally {
+			if (!replaced && !tempFile.delete()) {
+				logger.warn("Could not delete the temporary file " + tempFile);
+			}
+		}
+	}
+
+	/**
+	 * Streams the XML of a sheet, inserting rows at the end of its
+	 * {@code sheetData} element. The XML is not parsed: only the names of the tags
+	 * are looked at, and the last row is kept to find its number and the styles
+	 * of its cells.
+	 */
+	private static final class SheetDataSplicer {
+
+		private final Row headerRow;
+		private final List<Row> rows;
+		private final int dateStyleIndex;
+
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		// Start of the bytes of the buffer not written yet, and end of the data.
+		private int pos;
+		private int limit;
+		private boolean eof;
+
+		// The XML of the last row met, and the number of rows met.
+		private final ByteArrayOutputStream lastRow = new ByteArrayOutputStream();
+		private boolean inLastRow;
+		private int rowCount;
+
+		// Style index of each column of the last row.
+		private final Map<Integer, Integer> columnStyles = new HashMap<>();
+
+		SheetDataSplicer(Row headerRow, List<Row> rows, int dateStyleIndex) {
+			this.headerRow = headerRow;
+			this.rows = rows;
+			this.dateStyleIndex = dateStyleIndex;
+		}
+
+		/**
+		 * Copies the sheet XML to the output, inserting the rows.
+		 *
+		 * @param in  the sheet XML
+		 * @param out the output
+		 * @throws IOException if an I/O error occurs or the XML has no
+		 *                     {@code sheetData} element
+		 */
+		void splice(InputStream in, OutputStream out) throws IOException {
+			pos = 0;
+			limit = 0;
+			eof = false;
+			int scan = 0;
+			while (true) {
+				int tagStart = indexOf((byte) '<', scan);
+				if (tagStart < 0) {
+					flush(out, limit);
+					if (eof) {
+						throw new IOException("The sheet XML has no sheetData element");
+					}
+					fill(in);
+					scan = pos;
+					continue;
+				}
+				if (limit - tagStart < TAG_LOOKAHEAD && !eof) {
+					flush(out, tagStart);
+					fill(in);
+					scan = pos;
+					continue;
+				}
+
+				boolean closing = tagStart + 1 < limit && buffer[tagStart + 1] == '/';
+				int nameStart = closing ? tagStart + 2 : tagStart + 1;
+				int nameEnd = nameStart;
+				int localStart = nameStart;
+				while (nameEnd < limit && !isNameEnd(buffer[nameEnd])) {
+					if (buffer[nameEnd] == ':') {
+						localStart = nameEnd + 1;
+					}
+					nameEnd++;
+				}
+				String prefix = new String(buffer, nameStart, localStart - nameStart, StandardCharsets.US_ASCII);
+
+				if (!closing && isName(localStart, nameEnd, ROW_TAG)) {
+					flush(out, tagStart);
+					lastRow.reset();
+					inLastRow = true;
+					rowCount++;
+				} else if (closing && isName(localStart, nameEnd, SHEET_DATA_TAG)) {
+					flush(out, tagStart);
+					inLastRow = false;
+					writeRows(out, prefix);
+					copyRemaining(in, out, tagStart);
+					return;
+				} else if (!closing && isName(localStart, nameEnd, SHEET_DATA_TAG)) {
+					int tagEnd = indexOf((byte) '>', nameEnd);
+					if (tagEnd > 0 && buffer[tagEnd - 1] == '/') {
+						// Empty sheet written as <sheetData/>
+						flush(out, tagStart);
+						out.write(("<" + prefix + "sheetData>").getBytes(StandardCharsets.UTF_8));
+						writeRows(out, prefix);
+						out.write(("</" + prefix + "sheetData>").getBytes(StandardCharsets.UTF_8));
+						copyRemaining(in, out, tagEnd + 1);
+						return;
+					}
+				}
+				scan = tagStart + 1;
+			}
+		}
+
+		/**
+		 * Writes the header row if the sheet has no row, then the data rows after the
+		 * last row of the sheet.
+		 *
+		 * @param out    the output
+		 * @param prefix the namespace prefix of the sheet elements, with its colon
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeRows(OutputStream out, String prefix) throws IOException {
+			int rowIndex;
+			if (rowCount == 0) {
+				rowIndex = 1;
+			} else {
+				rowIndex = parseLastRow() + 1;
+			}
+
+			StringBuilder xml = new StringBuilder(ROWS_CHUNK_SIZE + 1024);
+			if (rowCount == 0 && headerRow != null) {
+				appendRow(xml, prefix, headerRow, 0);
+			}
+			for (Row row : rows) {
+				appendRow(xml, prefix, row, rowIndex++);
+				if (xml.length() > ROWS_CHUNK_SIZE) {
+					out.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+					xml.setLength(0);
+				}
+			}
+			out.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Reads the number of the last row and the styles of its cells. The styles
+		 * are only kept for a data row, not for the header row.
+		 *
+		 * @return the 0-based index of the last row
+		 */
+		private int parseLastRow() {
+			String rowXml = new String(lastRow.toByteArray(), StandardCharsets.UTF_8);
+			Matcher rowMatcher = ROW_NUMBER.matcher(rowXml);
+			int lastRowIndex = rowMatcher.find() ? Integer.parseInt(rowMatcher.group(1)) - 1 : rowCount - 1;
+			if (lastRowIndex <= 0) {
+				return lastRowIndex;
+			}
+
+			Matcher cellMatcher = CELL_TAG.matcher(rowXml);
+			int column = 0;
+			while (cellMatcher.find()) {
+				String attributes = cellMatcher.group(1);
+				Matcher columnMatcher = CELL_COLUMN.matcher(attributes);
+				if (columnMatcher.find()) {
+					column = CellReference.convertColStringToIndex(columnMatcher.group(1));
+				}
+				Matcher styleMatcher = CELL_STYLE.matcher(attributes);
+				if (styleMatcher.find()) {
+					columnStyles.put(column, Integer.parseInt(styleMatcher.group(1)));
+				}
+				column++;
+			}
+			return lastRowIndex;
+		}
+
+		/**
+		 * Appends the XML of a row.
+		 *
+		 * @param xml      the XML being built
+		 * @param prefix   the namespace prefix of the sheet elements
+		 * @param row      the source row
+		 * @param rowIndex the 0-based index of the row in the sheet
+		 */
+		private void appendRow(StringBuilder xml, String prefix, Row row, int rowIndex) {
+			xml.append('<').append(prefix).append("row r=\"").append(rowIndex + 1).append("\">");
+			for (Cell cell : row) {
+				appendCell(xml, prefix, cell, rowIndex);
+			}
+			xml.append("</").append(prefix).append("row>");
+		}
+
+		/**
+		 * Appends the XML of a cell. Formula cells keep their formula and their cached
+		 * value.
+		 *
+		 * @param xml      the XML being built
+		 * @param prefix   the namespace prefix of the sheet elements
+		 * @param cell     the source cell
+		 * @param rowIndex the 0-based index of the row in the sheet
+		 */
+		private void appendCell(StringBuilder xml, String prefix, Cell cell, int rowIndex) {
+			int column = cell.getColumnIndex();
+			Integer style = rowIndex > 0 ? columnStyles.get(column) : null;
+			CellType type = cell.getCellType();
+			CellType valueType = type == CellType.FORMULA ? cell.getCachedFormulaResultType() : type;
+			if (style == null && valueType == CellType.NUMERIC && dateStyleIndex >= 0
+					&& DateUtil.isCellDateFormatted(cell)) {
+				style = dateStyleIndex;
+			}
+			if (type == CellType.BLANK && style == null) {
+				return;
+			}
+
+			xml.append('<').append(prefix).append("c r=\"").append(CellReference.convertNumToColString(column))
+					.append(rowIndex + 1).append('"');
+			if (style != null) {
+				xml.append(" s=\"").append(style).append('"');
+			}
+			if (type == CellType.BLANK) {
+				xml.append("/>");
+				return;
+			}
+
+			switch (valueType) {
+			case STRING:
+				xml.append(type == CellType.FORMULA ? " t=\"str\"" : " t=\"inlineStr\"");
+				break;
+			case BOOLEAN:
+				xml.append(" t=\"b\"");
+				break;
+			case ERROR:
+				xml.append(" t=\"e\"");
+				break;
+			default:
+				break;
+			}
+			xml.append('>');
+
+			if (type == CellType.FORMULA) {
+				appendElement(xml, prefix, "f", cell.getCellFormula());
+			}
+			switch (valueType) {
+			case STRING:
+				if (type == CellType.FORMULA) {
+					appendElement(xml, prefix, "v", cell.getStringCellValue());
+				} else {
+					xml.append('<').append(prefix).append("is>");
+					appendElement(xml, prefix, "t", cell.getStringCellValue());
+					xml.append("</").append(prefix).append("is>");
+				}
+				break;
+			case NUMERIC:
+				appendElement(xml, prefix, "v", String.valueOf(cell.getNumericCellValue()));
+				break;
+			case BOOLEAN:
+				appendElement(xml, prefix, "v", cell.getBooleanCellValue() ? "1" : "0");
+				break;
+			case ERROR:
+				appendElement(xml, prefix, "v", FormulaError.forInt(cell.getErrorCellValue()).getString());
+				break;
+			default:
+				break;
+			}
+			xml.append("</").append(prefix).append("c>");
+		}
+
+		/**
+		 * Appends an element holding escaped text, preserving its leading and
+		 * trailing spaces.
+		 *
+		 * @param xml    the XML being built
+		 * @param prefix the namespace prefix of the sheet elements
+		 * @param name   the local name of the element
+		 * @param text   the text of the element
+		 */
+		private static void appendElement(StringBuilder xml, String prefix, String name, String text) {
+			xml.append('<').append(prefix).append(name);
+			if (!text.isEmpty() && (Character.isWhitespace(text.charAt(0))
+					|| Character.isWhitespace(text.charAt(text.length() - 1)))) {
+				xml.append(" xml:space=\"preserve\"");
+			}
+			xml.append('>');
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				switch (c) {
+				case '&':
+					xml.append("&amp;");
+					break;
+				case '<':
+					xml.append("&lt;");
+					break;
+				case '>':
+					xml.append("&gt;");
+					break;
+				default:
+					if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+						// Characters not allowed in XML, escaped as Excel does
+						xml.append(String.format("_x%04X_", (int) c));
+					} else {
+						xml.append(c);
+					}
+				}
+			}
+			xml.append("</").append(prefix).append(name).append('>');
+		}
+
+		/**
+		 * Writes the buffered bytes up to the given position, keeping them as part
+		 * of the last row when inside it.
+		 *
+		 * @param out the output
+		 * @param end the end of the bytes to write
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void flush(OutputStream out, int end) throws IOException {
+			out.write(buffer, pos, end - pos);
+			if (inLastRow) {
+				lastRow.write(buffer, pos, end - pos);
+			}
+			pos = end;
+		}
+
+		/**
+		 * Moves the bytes not written yet to the start of the buffer and fills it.
+		 *
+		 * @param in the sheet XML
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void fill(InputStream in) throws IOException {
+			System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+			while (limit < buffer.length) {
+				int read = in.read(buffer, limit, buffer.length - limit);
+				if (read < 0) {
+					eof = true;
+					break;
+				}
+				limit += read;
+			}
+		}
+
+		/**
+		 * Writes the bytes of the buffer from the given position, then the rest of the
+		 * sheet XML.
+		 *
+		 * @param in    the sheet XML
+		 * @param out   the output
+		 * @param start the start of the bytes to write
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void copyRemaining(InputStream in, OutputStream out, int start) throws IOException {
+			out.write(buffer, start, limit - start);
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+		}
+
+		/**
+		 * Finds a byte in the buffered data.
+		 *
+		 * @param b    the byte to find
+		 * @param from the position to start from
+		 * @return the position of the byte, or -1 if not found
+		 */
+		private int indexOf(byte b, int from) {
+			for (int i = from; i < limit; i++) {
+				if (buffer[i] == b) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Checks if the bytes of the buffer between two positions are a tag name.
+		 *
+		 * @param start the start of the name
+		 * @param end   the end of the name
+		 * @param name  the expected name
+		 * @return true if the bytes are the name, false otherwise
+		 */
+		private boolean isName(int start, int end, byte[] name) {
+			if (end - start != name.length) {
+				return false;
+			}
+			for (int i = 0; i < name.length; i++) {
+				if (buffer[start + i] != name[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Checks if a byte ends a tag name.
+		 *
+		 * @param b the byte
+		 * @return true if the byte ends a tag name, false otherwise
+		 */
+		private static boolean isNameEnd(byte b) {
+			return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+		}
+	}
+}
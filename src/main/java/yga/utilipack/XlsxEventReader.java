@@ -0,0 +1,945 @@
+package yga.utilipack;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.LocaleUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Streaming reader for XLSX files built on the OOXML event model (SAX). Rows
+ * are parsed one at a time from the sheet XML and handed to a
+ * {@link RowHandler}, so the memory used does not depend on the size of the
+ * sheet, unlike {@link XlsxUtils#readExcelFile(String)} which builds the whole
+ * workbook object graph.
+ *
+ * <p>
+ * The package is opened read-only from a {@link File}, which avoids buffering
+ * the zip in memory, and the shared strings table is only loaded when the
+ * first shared string cell is met, parsed with SAX into an array of strings
+ * rather than into the object model of the table. Formula cells expose their cached result.
+ * Sheets can be read in parallel by readers created with
+ * {@link #XlsxEventReader(XlsxEventReader)}, which share the package, the
+ * styles table and the shared strings table of the reader that opened it.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * try (XlsxEventReader reader = new XlsxEventReader(new File("input.xlsx"))) {
+ * 	reader.readSheets((sheetName, row) -&gt; System.out.println(row.getText(0)));
+ * }
+ * </pre>
+ * </p>
+ */
+public class XlsxEventReader implements Closeable {
+
+	static Logger logger = LogManager.getLogger(XlsxEventReader.class);
+
+	/**
+	 * Callback receiving the rows of a sheet in document order.
+	 */
+	@FunctionalInterface
+	public interface RowHandler {
+
+		/**
+		 * Handles one row. The row object is reused for the next row, so its values
+		 * must be copied if they are needed after this call returns.
+		 *
+		 * @param sheetName the name of the sheet being read
+		 * @param row       the current row
+		 */
+		void handleRow(String sheetName, EventRow row);
+	}
+
+	// The reader which opened the package and loads the shared strings table.
+	private final XlsxEventReader owner;
+
+	// The package opened in read-only mode.
+	private final OPCPackage pkg;
+
+	// The reader giving access to the parts of the package.
+	private final XSSFReader xssfReader;
+
+	// The styles table, used to detect date cells.
+	private final StylesTable stylesTable;
+
+	// The shared strings table, loaded on first use.
+	private String[] sharedStrings;
+
+	// Cache of the number format index of each cell style, -1 if not resolved yet.
+	private short[] formatIndexes = new short[0];
+
+	// Cache of the number format string of each cell style.
+	private String[] formatStrings = new String[0];
+
+	// Cache of the date flag of each cell style.
+	private boolean[] dateFormats = new boolean[0];
+
+	// Formatter used for the formatted values of the cells.
+	private final DataFormatter dataFormatter = new DataFormatter();
+
+	// Normalized names of the projected headers, null to read every column.
+	private Set<String> projection;
+
+	// Map of normalized header values to column indices of the sheet being read.
+	private Map<String, Integer> headerMap = new HashMap<>();
+
+	// Projected columns of the sheet being read, null to read every column.
+	private boolean[] projectedColumns;
+
+	/**
+	 * Opens an XLSX file for streaming reads.
+	 *
+	 * @param file the XLSX file to read
+	 * @throws IOException if the file cannot be opened or is not a valid XLSX file
+	 */
+	public XlsxEventReader(File file) throws IOException {
+		this.owner = this;
+		try {
+			this.pkg = OPCPackage.open(file, PackageAccess.READ);
+		} catch (OpenXML4JException e) {
+			throw new IOException("Could not open the XLSX file: " + file, e);
+		}
+		try {
+			this.xssfReader = new XSSFReader(pkg);
+			this.stylesTable = xssfReader.getStylesTable();
+		} catch (IOException | OpenXML4JException e) {
+			pkg.revert();
+			throw new IOException("Could not read the XLSX file: " + file, e);
+		}
+		logger.debug("XlsxEventReader opened on file: " + file);
+	}
+
+	/**
+	 * Creates a reader sharing the package, the styles table and the shared
+	 * strings table of another reader, loaded once for all of them, with its own
+	 * parsing state and column projection, so that each thread reading a sheet
+	 * of the workbook uses its own reader. Closing it leaves the package open:
+	 * the other reader must stay open while it is used.
+	 *
+	 * @param reader the reader whose package is shared
+	 */
+	XlsxEventReader(XlsxEventReader reader) {
+		this.owner = reader.owner;
+		this.pkg = reader.pkg;
+		this.xssfReader = reader.xssfReader;
+		this.stylesTable = reader.stylesTable;
+	}
+
+	/**
+	 * Retrieves the names of the sheets of the workbook, in workbook order.
+	 *
+	 * @return the list of sheet names
+	 * @throws IOException if an I/O error occurs
+	 */
+	public List<String> getSheetNames() throws IOException {
+		List<String> sheetNames = new ArrayList<>();
+		XSSFReader.SheetIterator sheets = getSheetIterator();
+		while (sheets.hasNext()) {
+			sheets.next().close();
+			sheetNames.add(sheets.getSheetName());
+		}
+		return sheetNames;
+	}
+
+	/**
+	 * Retrieves the name of the package part holding the XML of a sheet, such as
+	 * {@code /xl/worksheets/sheet1.xml}.
+	 *
+	 * @param sheetName the name of the sheet
+	 * @return the part name, or null if the sheet is not found
+	 * @throws IOException if an I/O error occurs
+	 */
+	public String getSheetPartName(String sheetName) throws IOException {
+		XSSFReader.SheetIterator sheets = getSheetIterator();
+		while (sheets.hasNext()) {
+			sheets.next().close();
+			if (sheets.getSheetName().equals(sheetName)) {
+				return sheets.getSheetPart().getPartName().getName();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Streams the rows of one sheet to the given handler.
+	 *
+	 * @param sheetName the name of the sheet to read
+	 * @param handler   the handler receiving the rows
+	 * @return true if the sheet was found, false otherwise
+	 * @throws IOException if an I/O or parsing error occurs
+	 */
+	public boolean readSheet(String sheetName, RowHandler handler) throws IOException {
+		XSSFReader.SheetIterator sheets = getSheetIterator();
+		while (sheets.hasNext()) {
+			try (InputStream sheetData = sheets.next()) {
+				if (sheets.getSheetName().equals(sheetName)) {
+					parseSheet(sheetName, sheetData, handler);
+					return true;
+				}
+			}
+		}
+		logger.warn("Sheet " + sheetName + " not found.");
+		return false;
+	}
+
+	/**
+	 * Streams the rows of every sheet of the workbook to the given handler, sheet
+	 * after sheet in workbook order.
+	 *
+	 * @param handler the handler receiving the rows
+	 * @throws IOException if an I/O or parsing error occurs
+	 */
+	public void readSheets(RowHandler handler) throws IOException {
+		XSSFReader.SheetIterator sheets = getSheetIterator();
+		while (sheets.hasNext()) {
+			try (InputStream sheetData = sheets.next()) {
+				parseSheet(sheets.getSheetName(), sheetData, handler);
+			}
+		}
+	}
+
+	/**
+	 * Restricts the columns read to the ones whose header matches one of the
+	 * given names, compared after normalization as in
+	 * {@link XlsxUtils#copyRowsToOutputSheet}. The header row (the first row of
+	 * each sheet) is always read in full; in the following rows the cells of other
+	 * columns are skipped without reading their value, so parse time and memory
+	 * scale with the projected columns.
+	 *
+	 * @param headerNames the headers of the columns to read, null or empty to read
+	 *                    every column
+	 */
+	public void setColumnProjection(String... headerNames) {
+		if (headerNames == null || headerNames.length == 0) {
+			projection = null;
+			return;
+		}
+		projection = new HashSet<>();
+		for (String headerName : headerNames) {
+			projection.add(XlsxUtils.normalizeHeaderName(headerName));
+		}
+	}
+
+	/**
+	 * Retrieves the column index of a header of the sheet being read, once its
+	 * header row has been read.
+	 *
+	 * @param headerName the header name, normalized before the lookup
+	 * @return the 0-based column index, or -1 if the header is not found
+	 */
+	public int getColumnIndex(String headerName) {
+		Integer columnIndex = headerMap.get(XlsxUtils.normalizeHeaderName(headerName));
+		return columnIndex != null ? columnIndex : -1;
+	}
+
+	/**
+	 * Retrieves the cell style stored at the given index of the styles table.
+	 *
+	 * @param styleIndex the index of the style, as given by
+	 *                   {@link EventRow#getStyleIndex(int)}
+	 * @return the cell style
+	 */
+	public XSSFCellStyle getCellStyle(int styleIndex) {
+		return stylesTable.getStyleAt(styleIndex);
+	}
+
+	/**
+	 * Retrieves the index of the first cell style of the styles table whose number
+	 * format is a date format.
+	 *
+	 * @return the index of the style, or -1 if no style formats dates
+	 */
+	public int findDateStyleIndex() {
+		for (int styleIndex = 0; styleIndex < stylesTable.getNumCellStyles(); styleIndex++) {
+			resolveFormat(styleIndex);
+			if (dateFormats[styleIndex]) {
+				return styleIndex;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Closes the package without saving anything, unless the reader shares the
+	 * package of another reader.
+	 */
+	@Override
+	public void close() {
+		if (owner == this) {
+			pkg.revert();
+		}
+	}
+
+	/**
+	 * Retrieves an iterator over the sheets of the workbook.
+	 *
+	 * @return the sheet iterator
+	 * @throws IOException if an I/O error occurs
+	 */
+	private XSSFReader.SheetIterator getSheetIterator() throws IOException {
+		try {
+			return (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+		} catch (OpenXML4JException e) {
+			throw new IOException("Could not list the sheets of the workbook", e);
+		}
+	}
+
+	/**
+	 * Parses the XML of one sheet.
+	 *
+	 * @param sheetName the name of the sheet
+	 * @param sheetData the stream of the sheet XML part
+	 * @param handler   the handler receiving the rows
+	 * @throws IOException if an I/O or parsing error occurs
+	 */
+	private void parseSheet(String sheetName, InputStream sheetData, RowHandler handler) throws IOException {
+		headerMap = new HashMap<>();
+		projectedColumns = null;
+		try {
+			XMLReader parser = XMLHelper.newXMLReader();
+			parser.setContentHandler(new SheetHandler(sheetName, handler));
+			parser.parse(new InputSource(sheetData));
+		} catch (SAXException | ParserConfigurationException e) {
+			throw new IOException("Could not parse sheet " + sheetName, e);
+		}
+	}
+
+	/**
+	 * Resolves the header map and the projected columns of a sheet from its first
+	 * row.
+	 *
+	 * @param firstRow the first row of the sheet
+	 */
+	private void resolveHeader(EventRow firstRow) {
+		headerMap = firstRow.getRowNum() == 0 ? XlsxUtils.getHeaderMap(firstRow) : new HashMap<String, Integer>();
+		if (projection == null) {
+			projectedColumns = null;
+			return;
+		}
+		projectedColumns = new boolean[firstRow.getLastCellNum()];
+		for (Map.Entry<String, Integer> header : headerMap.entrySet()) {
+			if (projection.contains(header.getKey())) {
+				projectedColumns[header.getValue()] = true;
+			}
+		}
+	}
+
+	/**
+	 * Retrieves a shared string, loading the shared strings table on first use.
+	 *
+	 * @param index the index of the shared string
+	 * @return the shared string
+	 * @throws SAXException if the shared strings table cannot be read
+	 */
+	private String getSharedString(int index) throws SAXException {
+		if (sharedStrings == null) {
+			sharedStrings = owner.loadSharedStrings();
+		}
+		if (index < 0 || index >= sharedStrings.length) {
+			throw new SAXException("Shared string " + index + " not found in a table of " + sharedStrings.length);
+		}
+		return sharedStrings[index];
+	}
+
+	/**
+	 * Loads the shared strings table of the package once, for this reader and
+	 * the readers sharing its package.
+	 *
+	 * @return the shared strings table
+	 * @throws SAXException if the shared strings table cannot be read
+	 */
+	private synchronized String[] loadSharedStrings() throws SAXException {
+		if (sharedStrings == null) {
+			try (InputStream sharedStringsData = xssfReader.getSharedStringsData()) {
+				if (sharedStringsData == null) {
+					throw new SAXException("The workbook has no shared strings table");
+				}
+				SharedStringsHandler handler = new SharedStringsHandler();
+				XMLReader parser = XMLHelper.newXMLReader();
+				parser.setContentHandler(handler);
+				parser.parse(new InputSource(sharedStringsData));
+				sharedStrings = handler.getStrings();
+			} catch (IOException | OpenXML4JException | ParserConfigurationException e) {
+				throw new SAXException("Could not read the shared strings table", e);
+			}
+		}
+		return sharedStrings;
+	}
+
+	/**
+	 * Resolves and caches the number format of a cell style.
+	 *
+	 * @param styleIndex the index of the style
+	 */
+	private void resolveFormat(int styleIndex) {
+		if (styleIndex >= formatIndexes.length) {
+			int size = Math.max(styleIndex + 1, formatIndexes.length * 2);
+			int oldSize = formatIndexes.length;
+			formatIndexes = Arrays.copyOf(formatIndexes, size);
+			formatStrings = Arrays.copyOf(formatStrings, size);
+			dateFormats = Arrays.copyOf(dateFormats, size);
+			Arrays.fill(formatIndexes, oldSize, size, (short) -1);
+		}
+		if (formatIndexes[styleIndex] == -1) {
+			short formatIndex = 0;
+			String formatString = BuiltinFormats.getBuiltinFormat(0);
+			if (styleIndex < stylesTable.getNumCellStyles()) {
+				XSSFCellStyle style = stylesTable.getStyleAt(styleIndex);
+				formatIndex = style.getDataFormat();
+				formatString = style.getDataFormatString();
+				if (formatString == null) {
+					formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+				}
+			}
+			formatIndexes[styleIndex] = formatIndex;
+			formatStrings[styleIndex] = formatString;
+			dateFormats[styleIndex] = DateUtil.isADateFormat(formatIndex, formatString);
+		}
+	}
+
+	/**
+	 * A row read from the sheet XML. The same instance is reused for every row of
+	 * a sheet, so reading a sheet does not allocate one object per cell.
+	 */
+	public class EventRow {
+
+		// The 0-based index of the row.
+		private int rowNum;
+
+		// One past the index of the last cell of the row.
+		private int lastCellNum;
+
+		// The type of each cell, null for a missing cell.
+		private CellType[] types = new CellType[16];
+
+		// The numeric value of numeric and boolean cells.
+		private double[] numbers = new double[16];
+
+		// The value of string and error cells.
+		private String[] strings = new String[16];
+
+		// The style index of each cell.
+		private int[] styles = new int[16];
+
+		/**
+		 * Clears the row before reading the next one.
+		 *
+		 * @param rowNum the 0-based index of the next row
+		 */
+		private void reset(int rowNum) {
+			Arrays.fill(types, 0, lastCellNum, null);
+			Arrays.fill(strings, 0, lastCellNum, null);
+			this.rowNum = rowNum;
+			this.lastCellNum = 0;
+		}
+
+		/**
+		 * Stores the value of a cell.
+		 *
+		 * @param column     the 0-based column index
+		 * @param type       the type of the value
+		 * @param number     the numeric value, for numeric and boolean cells
+		 * @param string     the string value, for string and error cells
+		 * @param styleIndex the style index of the cell
+		 */
+		private void setCell(int column, CellType type, double number, String string, int styleIndex) {
+			if (column >= types.length) {
+				int size = Math.max(column + 1, types.length * 2);
+				types = Arrays.copyOf(types, size);
+				numbers = Arrays.copyOf(numbers, size);
+				strings = Arrays.copyOf(strings, size);
+				styles = Arrays.copyOf(styles, size);
+			}
+			types[column] = type;
+			numbers[column] = number;
+			strings[column] = string;
+			styles[column] = styleIndex;
+			lastCellNum = Math.max(lastCellNum, column + 1);
+		}
+
+		/**
+		 * @return the 0-based index of the row
+		 */
+		public int getRowNum() {
+			return rowNum;
+		}
+
+		/**
+		 * @return one past the index of the last cell of the row, 0 if the row is
+		 *         empty
+		 */
+		public int getLastCellNum() {
+			return lastCellNum;
+		}
+
+		/**
+		 * Checks if a cell is present in the sheet XML.
+		 *
+		 * @param column the 0-based column index
+		 * @return true if the cell exists, false otherwise
+		 */
+		public boolean hasCell(int column) {
+			return column >= 0 && column < lastCellNum && types[column] != null;
+		}
+
+		/**
+		 * Retrieves the type of a cell. Formula cells report the type of their
+		 * cached result.
+		 *
+		 * @param column the 0-based column index
+		 * @return the cell type, BLANK for a missing cell
+		 */
+		public CellType getCellType(int column) {
+			return hasCell(column) ? types[column] : CellType.BLANK;
+		}
+
+		/**
+		 * Retrieves the style index of a cell.
+		 *
+		 * @param column the 0-based column index
+		 * @return the index of the cell style in the styles table
+		 */
+		public int getStyleIndex(int column) {
+			return hasCell(column) ? styles[column] : 0;
+		}
+
+		/**
+		 * Retrieves the value of a string or error cell.
+		 *
+		 * @param column the 0-based column index
+		 * @return the string value, or null for other cell types
+		 */
+		public String getStringValue(int column) {
+			return hasCell(column) ? strings[column] : null;
+		}
+
+		/**
+		 * Retrieves the value of a numeric cell.
+		 *
+		 * @param column the 0-based column index
+		 * @return the numeric value, or 0 for other cell types
+		 */
+		public double getNumericValue(int column) {
+			return getCellType(column) == CellType.NUMERIC ? numbers[column] : 0;
+		}
+
+		/**
+		 * Retrieves the value of a boolean cell.
+		 *
+		 * @param column the 0-based column index
+		 * @return the boolean value, or false for other cell types
+		 */
+		public boolean getBooleanValue(int column) {
+			return getCellType(column) == CellType.BOOLEAN && numbers[column] != 0;
+		}
+
+		/**
+		 * Checks if a numeric cell is formatted as a date.
+		 *
+		 * @param column the 0-based column index
+		 * @return true if the cell holds a date, false otherwise
+		 */
+		public boolean isDate(int column) {
+			if (getCellType(column) != CellType.NUMERIC) {
+				return false;
+			}
+			resolveFormat(styles[column]);
+			return dateFormats[styles[column]] && DateUtil.isValidExcelDate(numbers[column]);
+		}
+
+		/**
+		 * Retrieves the value of a date cell.
+		 *
+		 * @param column the 0-based column index
+		 * @return the date, or null if the cell does not hold a date
+		 */
+		public Date getDateValue(int column) {
+			return isDate(column) ? DateUtil.getJavaDate(numbers[column]) : null;
+		}
+
+		/**
+		 * Retrieves the typed value of a cell.
+		 *
+		 * @param column the 0-based column index
+		 * @return a String, Double, Boolean or Date, or null for a blank cell
+		 */
+		public Object getValue(int column) {
+			switch (getCellType(column)) {
+			case NUMERIC:
+				return isDate(column) ? getDateValue(column) : (Object) numbers[column];
+			case BOOLEAN:
+				return getBooleanValue(column);
+			case STRING:
+			case ERROR:
+				return strings[column];
+			default:
+				return null;
+			}
+		}
+
+		/**
+		 * Retrieves the value of a cell formatted with its number format, as Excel
+		 * displays it.
+		 *
+		 * @param column the 0-based column index
+		 * @return the formatted value, empty for a blank cell
+		 */
+		public String getFormattedValue(int column) {
+			switch (getCellType(column)) {
+			case NUMERIC:
+				int styleIndex = styles[column];
+				resolveFormat(styleIndex);
+				return dataFormatter.formatRawCellContents(numbers[column], formatIndexes[styleIndex],
+						formatStrings[styleIndex]);
+			case BOOLEAN:
+				return getBooleanValue(column) ? "TRUE" : "FALSE";
+			case STRING:
+			case ERROR:
+				return strings[column];
+			default:
+				return "";
+			}
+		}
+
+		/**
+		 * Retrieves the text of a cell the same way {@code Cell.toString()} does for
+		 * the cells of a workbook read by {@link XlsxUtils#readExcelFile(String)}.
+		 *
+		 * @param column the 0-based column index
+		 * @return the text of the cell, empty for a blank cell
+		 */
+		public String getText(int column) {
+			switch (getCellType(column)) {
+			case NUMERIC:
+				if (isDate(column)) {
+					DateFormat sdf = new SimpleDateFormat("dd-MMM-yyyy", LocaleUtil.getUserLocale());
+					sdf.setTimeZone(LocaleUtil.getUserTimeZone());
+					return sdf.format(getDateValue(column));
+				}
+				return Double.toString(numbers[column]);
+			case BOOLEAN:
+				return getBooleanValue(column) ? "TRUE" : "FALSE";
+			case STRING:
+			case ERROR:
+				return strings[column];
+			default:
+				return "";
+			}
+		}
+	}
+
+	/**
+	 * SAX handler turning the rows of a sheet XML part into {@link EventRow}
+	 * callbacks.
+	 */
+	private class SheetHandler extends DefaultHandler {
+
+		private final String sheetName;
+		private final RowHandler handler;
+		private final EventRow row = new EventRow();
+
+		// Buffer for the text of the current value element.
+		private final StringBuilder value = new StringBuilder();
+
+		private boolean inRow;
+		private boolean inValue;
+		private boolean skipCell;
+		private boolean headerResolved;
+		private int nextRowNum;
+		private int column;
+		private int nextColumn;
+		private String cellType;
+		private int styleIndex;
+
+		SheetHandler(String sheetName, RowHandler handler) {
+			this.sheetName = sheetName;
+			this.handler = handler;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			switch (localName) {
+			case "row":
+				String rowRef = attributes.getValue("r");
+				int rowNum = rowRef != null ? Integer.parseInt(rowRef) - 1 : nextRowNum;
+				row.reset(rowNum);
+				nextRowNum = rowNum + 1;
+				nextColumn = 0;
+				inRow = true;
+				break;
+			case "c":
+				String cellRef = attributes.getValue("r");
+				column = cellRef != null ? columnIndex(cellRef) : nextColumn;
+				nextColumn = column + 1;
+				cellType = attributes.getValue("t");
+				skipCell = headerResolved && !isProjected(column);
+				if (skipCell) {
+					break; // Outside the projection, the value is not read at all
+				}
+				String style = attributes.getValue("s");
+				styleIndex = style != null ? Integer.parseInt(style) : 0;
+				value.setLength(0);
+				row.setCell(column, CellType.BLANK, 0, null, styleIndex);
+				break;
+			case "v":
+				value.setLength(0);
+				inValue = !skipCell;
+				break;
+			case "t":
+				// Text of an inline string, possibly split into several runs
+				inValue = !skipCell && "inlineStr".equals(cellType);
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			switch (localName) {
+			case "v":
+				inValue = false;
+				break;
+			case "t":
+				inValue = false;
+				break;
+			case "c":
+				storeCell();
+				break;
+			case "row":
+				inRow = false;
+				if (!headerResolved) {
+					resolveHeader(row);
+					headerResolved = true;
+				}
+				handler.handleRow(sheetName, row);
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inValue) {
+				value.append(ch, start, length);
+			}
+		}
+
+		/**
+		 * Stores the value of the cell that has just been parsed.
+		 *
+		 * @throws SAXException if a shared string cannot be read
+		 */
+		private void storeCell() throws SAXException {
+			if (!inRow || skipCell) {
+				return;
+			}
+			if (value.length() == 0 && !"inlineStr".equals(cellType) && !"str".equals(cellType)) {
+				return; // Blank cell, already stored
+			}
+			if (cellType == null || "n".equals(cellType)) {
+				row.setCell(column, CellType.NUMERIC, Double.parseDouble(value.toString()), null, styleIndex);
+				return;
+			}
+			switch (cellType) {
+			case "s":
+				String sharedString = getSharedString(Integer.parseInt(value.toString()));
+				row.setCell(column, CellType.STRING, 0, sharedString, styleIndex);
+				break;
+			case "inlineStr":
+			case "str":
+				row.setCell(column, CellType.STRING, 0, value.toString(), styleIndex);
+				break;
+			case "b":
+				row.setCell(column, CellType.BOOLEAN, "1".equals(value.toString()) ? 1 : 0, null, styleIndex);
+				break;
+			case "e":
+				row.setCell(column, CellType.ERROR, 0, value.toString(), styleIndex);
+				break;
+			default:
+				logger.debug("Unknown cell type " + cellType + " in sheet " + sheetName);
+				break;
+			}
+		}
+
+		/**
+		 * Checks if a column is part of the projection of the current sheet.
+		 *
+		 * @param column the 0-based column index
+		 * @return true if the column is read, false if it is skipped
+		 */
+		private boolean isProjected(int column) {
+			return projectedColumns == null || (column < projectedColumns.length && projectedColumns[column]);
+		}
+
+		/**
+		 * Computes the 0-based column index of a cell reference such as "AB12".
+		 *
+		 * @param cellRef the cell reference
+		 * @return the column index
+		 */
+		private int columnIndex(String cellRef) {
+			int index = 0;
+			for (int i = 0; i < cellRef.length(); i++) {
+				char c = cellRef.charAt(i);
+				if (c < 'A' || c > 'Z') {
+					break;
+				}
+				index = index * 26 + (c - 'A' + 1);
+			}
+			return index - 1;
+		}
+	}
+
+	/**
+	 * SAX handler reading the strings of the shared strings table, the text of
+	 * their runs concatenated and their phonetic runs left out, as by
+	 * {@code ReadOnlySharedStringsTable}.
+	 */
+	private static class SharedStringsHandler extends DefaultHandler {
+
+		private String[] strings = new String[16];
+		private int count;
+
+		// Buffer for the text of the current string item.
+		private final StringBuilder text = new StringBuilder();
+
+		private boolean inText;
+		private boolean inPhonetic;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			switch (localName) {
+			case "sst":
+				String uniqueCount = attributes.getValue("uniqueCount");
+				if (uniqueCount != null) {
+					strings = new String[Math.max(16, Integer.parseInt(uniqueCount))];
+				}
+				break;
+			case "si":
+				text.setLength(0);
+				break;
+			case "t":
+				inText = !inPhonetic;
+				break;
+			case "rPh":
+				inPhonetic = true;
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			switch (localName) {
+			case "t":
+				inText = false;
+				break;
+			case "rPh":
+				inPhonetic = false;
+				break;
+			case "si":
+				if (count == strings.length) {
+					strings = Arrays.copyOf(strings, count * 2);
+				}
+				strings[count++] = decodeEscapes(text);
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inText) {
+				text.append(ch, start, length);
+			}
+		}
+
+		/**
+		 * @return the strings of the table, in index order
+		 */
+		String[] getStrings() {
+			return count == strings.length ? strings : Arrays.copyOf(strings, count);
+		}
+
+		/**
+		 * Decodes the {@code _xHHHH_} escapes of the characters XML cannot hold, as
+		 * {@code XSSFRichTextString#getString()} does.
+		 *
+		 * @param text the text of a string item
+		 * @return the decoded text
+		 */
+		private static String decodeEscapes(CharSequence text) {
+			String value = text.toString();
+			if (value.indexOf("_x") < 0) {
+				return value;
+			}
+			StringBuilder decoded = new StringBuilder(value.length());
+			int i = 0;
+			while (i < value.length()) {
+				if (i + 7 <= value.length() && value.charAt(i) == '_' && value.charAt(i + 1) == 'x'
+						&& value.charAt(i + 6) == '_' && isHexDigits(value, i + 2, i + 6)) {
+					decoded.append((char) Integer.parseInt(value.substring(i + 2, i + 6), 16));
+					i += 7;
+				} else {
+					decoded.append(value.charAt(i++));
+				}
+			}
+			return decoded.toString();
+		}
+
+		/**
+		 * Checks if a range of a text holds only hexadecimal digits.
+		 *
+		 * @param text  the text
+		 * @param start the start of the range
+		 * @param end   the end of the range, exclusive
+		 * @return true if every character of the range is a hexadecimal digit
+		 */
+		private static boolean isHexDigits(String text, int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (Character.digit(text.charAt(i), 16) < 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package yga.utilipack;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Merges many source workbooks into one output workbook, parsing and filtering
+ * the sources on a bounded pool of worker threads while a single writer, the
+ * calling thread, appends the filtered rows to the target sheets.
+ *
+ * <p>
+ * The first sheet of each source file is copied to the target sheet named by
+ * {@link XlsxUtils#extractSheetName(String, char, char)} on the file name. The
+ * output is the same, sheet order and row order included, as calling
+ * {@link XlsxUtils#copyRowsToOutputSheet} on each file one after another. The
+ * sources are read with {@link XlsxEventReader}, so formula cells are copied
+ * as their cached value and comments and hyperlinks are not copied.
+ * </p>
+ *
+ * <p>
+ * Memory stays bounded: the files are submitted to the workers at most
+ * {@code threads} files ahead of the file being written, so that a slow file
+ * does not leave the files read after it open and buffered, and each file in
+ * flight buffers at most {@code queueCapacity} batches of rows before its
+ * worker waits for the writer.
+ * </p>
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * XlsxMergeEngine engine = new XlsxMergeEngine(columnsToCheck, "KO", false);
+ * Workbook output = XlsxUtils.createStreamingWorkbook();
+ * Set&lt;String&gt; usedSheetNames = new HashSet&lt;&gt;();
+ * engine.merge(sourceFiles, output, usedSheetNames);
+ * XlsxUtils.writeExcelFile(output, "merged.xlsx");
+ * </pre>
+ * </p>
+ */
+public class XlsxMergeEngine {
+
+	private static final Logger logger = LogManager.getLogger(XlsxMergeEngine.class);
+
+	// Marker closing the queue of a source file.
+	private static final List<BufferedRow> END_OF_FILE = new ArrayList<>();
+
+	// The columns to check based on header values.
+	private final String[] columnsToCheck;
+
+	// The specific value to search for (can be null or empty).
+	private final String specificValue;
+
+	// Whether to include sheets without data rows.
+	private final boolean includeEmptySheets;
+
+	// Number of worker threads parsing the source files.
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	// Number of rows per batch handed to the writer.
+	private int batchSize = 512;
+
+	// Number of batches a source file can buffer before its worker waits.
+	private int queueCapacity = 8;
+
+	// Characters marking the start and the end of the sheet name in a file name.
+	private char sheetNameStart = '(';
+	private char sheetNameEnd = ')';
+
+	/**
+	 * Constructor to initialize the merge engine with the same filter parameters
+	 * as {@link XlsxUtils#copyRowsToOutputSheet}.
+	 *
+	 * @param columnsToCheck     the columns to check based on header values
+	 * @param specificValue      the specific value to search for (can be null or
+	 *                           empty)
+	 * @param includeEmptySheets whether to include sheets without data rows (only
+	 *                           header)
+	 */
+	public XlsxMergeEngine(String[] columnsToCheck, String specificValue, boolean includeEmptySheets) {
+		this.columnsToCheck = columnsToCheck;
+		this.specificValue = specificValue;
+		this.includeEmptySheets = includeEmptySheets;
+	}
+
+	/**
+	 * Sets the number of worker threads parsing the source files.
+	 *
+	 * @param threads the number of worker threads, at least 1
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			String errorMessage = "The number of threads must be positive: " + threads;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets how many rows a source file can buffer before its worker waits for the
+	 * writer, as a number of batches and a number of rows per batch.
+	 *
+	 * @param queueCapacity the number of batches buffered per source file
+	 * @param batchSize     the number of rows per batch
+	 */
+	public void setBuffering(int queueCapacity, int batchSize) {
+		if (queueCapacity < 1 || batchSize < 1) {
+			String errorMessage = "Buffer sizes must be positive: queueCapacity=" + queueCapacity + ", batchSize="
+					+ batchSize;
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		this.queueCapacity = queueCapacity;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the characters delimiting the target sheet name in the source file
+	 * names. Defaults to parentheses.
+	 *
+	 * @param start the character marking the start of the sheet name
+	 * @param end   the character marking the end of the sheet name
+	 */
+	public void setSheetNameDelimiters(char start, char end) {
+		this.sheetNameStart = start;
+		this.sheetNameEnd = end;
+	}
+
+	/**
+	 * Merges the source files into the output workbook.
+	 *
+	 * @param sourceFiles    the source XLSX files, in merge order
+	 * @param outputWorkbook the output Workbook object
+	 * @param usedSheetNames the set of used sheet names, filled as by
+	 *                       {@link XlsxUtils#copyRowsToOutputSheet}
+	 * @throws IOException              if a source file cannot be read
+	 * @throws IllegalArgumentException if no sheet name can be extracted from a
+	 *                                  file name
+	 */
+	public void merge(List<File> sourceFiles, Workbook outputWorkbook, Set<String> usedSheetNames)
+			throws IOException {
+		List<String> targetSheetNames = new ArrayList<>();
+		for (File sourceFile : sourceFiles) {
+			String sheetName = XlsxUtils.extractSheetName(sourceFile.getName(), sheetNameStart, sheetNameEnd);
+			if (sheetName == null) {
+				String errorMessage = "No sheet name found in file name: " + sourceFile.getName();
+				logger.error(errorMessage);
+				throw new IllegalArgumentException(errorMessage);
+			}
+			targetSheetNames.add(sheetName);
+		}
+
+		ExecutorService workers = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, sourceFiles.size())));
+		List<SourceTask> tasks = new ArrayList<>();
+		try {
+			for (int i = 0; i < sourceFiles.size(); i++) {
+				// Keep the submitted files within a window of threads files from the
+				// one being written
+				while (tasks.size() < sourceFiles.size() && tasks.size() < i + threads) {
+					SourceTask task = new SourceTask(sourceFiles.get(tasks.size()));
+					tasks.add(task);
+					workers.execute(task);
+				}
+				writeSource(tasks.get(i), targetSheetNames.get(i), outputWorkbook, usedSheetNames);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Merge interrupted", e);
+		} finally {
+			workers.shutdownNow();
+			for (SourceTask task : tasks) {
+				task.closeReader();
+			}
+		}
+		logger.info("Merge of " + sourceFiles.size() + " files completed. " + XlsxUtils.getStyleCache(outputWorkbook));
+	}
+
+	/**
+	 * Appends the rows produced by a source task to its target sheet.
+	 *
+	 * @param task            the source task
+	 * @param targetSheetName the name of the target sheet
+	 * @param outputWorkbook  the output Workbook object
+	 * @param usedSheetNames  the set of used sheet names
+	 * @throws IOException          if the source file could not be read
+	 * @throws InterruptedException if the writer is interrupted
+	 */
+	private void writeSource(SourceTask task, String targetSheetName, Workbook outputWorkbook,
+			Set<String> usedSheetNames) throws IOException, InterruptedException {
+		Sheet targetSheet = outputWorkbook.getSheet(targetSheetName);
+		if (targetSheet == null) {
+			targetSheet = outputWorkbook.createSheet(targetSheetName);
+		}
+
+		// Start new rows after existing content or after header row if no content
+		int lastRowIndex = XlsxUtils.getLastRowIndex(targetSheet);
+		int rowIndex = lastRowIndex >= 0 ? lastRowIndex + 1 : 1;
+		int rowsCopied = 0;
+		boolean headerSeen = false;
+
+		List<BufferedRow> batch;
+		while ((batch = task.queue.take()) != END_OF_FILE) {
+			for (BufferedRow sourceRow : batch) {
+				if (sourceRow.rowNum == 0) {
+					headerSeen = true;
+					if (!XlsxUtils.hasHeaderRow(targetSheet)) {
+						copyRow(sourceRow, targetSheet.createRow(0), outputWorkbook, task.reader);
+					}
+					XlsxUtils.applyAutoFilter(targetSheet);
+				} else {
+					copyRow(sourceRow, targetSheet.createRow(rowIndex), outputWorkbook, task.reader);
+					rowIndex++;
+					rowsCopied++;
+				}
+			}
+		}
+		if (task.error != null) {
+			throw new IOException("Could not merge file " + task.sourceFile, task.error);
+		}
+		if (!headerSeen) {
+			XlsxUtils.applyAutoFilter(targetSheet);
+		}
+		task.closeReader();
+
+		// Determine if the sheet should be added to usedSheetNames based on
+		// includeEmptySheets
+		if (includeEmptySheets || rowsCopied > 0) {
+			usedSheetNames.add(targetSheet.getSheetName());
+		}
+		logger.debug(rowsCopied + " rows merged from " + task.sourceFile + " into sheet " + targetSheetName);
+	}
+
+	/**
+	 * Copies a buffered row with styles to the target row.
+	 *
+	 * @param sourceRow      the buffered source row
+	 * @param targetRow      the target row
+	 * @param outputWorkbook the output Workbook object
+	 * @param reader         the streaming reader giving access to the source styles
+	 */
+	private static void copyRow(BufferedRow sourceRow, Row targetRow, Workbook outputWorkbook,
+			XlsxEventReader reader) {
+		CellStyleCache styleCache = XlsxUtils.getStyleCache(outputWorkbook);
+		for (int columnIndex = 0; columnIndex < sourceRow.values.length; columnIndex++) {
+			if (!sourceRow.present[columnIndex]) {
+				continue;
+			}
+			Cell targetCell = targetRow.createCell(columnIndex);
+			Object value = sourceRow.values[columnIndex];
+			if (value instanceof String) {
+				targetCell.setCellValue((String) value);
+			} else if (value instanceof Double) {
+				targetCell.setCellValue((Double) value);
+			} else if (value instanceof Date) {
+				targetCell.setCellValue((Date) value);
+			} else if (value instanceof Boolean) {
+				targetCell.setCellValue((Boolean) value);
+			} else {
+				targetCell.setBlank();
+			}
+			int styleIndex = sourceRow.styles[columnIndex];
+			targetCell.setCellStyle(styleCache.getStyle(outputWorkbook, reader, reader.getCellStyle(styleIndex)));
+		}
+	}
+
+	/**
+	 * A filtered row detached from the streaming reader, so that it can be handed
+	 * from a worker to the writer.
+	 */
+	private static class BufferedRow {
+
+		private final int rowNum;
+		private final Object[] values;
+		private final int[] styles;
+		private final boolean[] present;
+
+		BufferedRow(XlsxEventReader.EventRow row) {
+			int size = row.getLastCellNum();
+			this.rowNum = row.getRowNum();
+			this.values = new Object[size];
+			this.styles = new int[size];
+			this.present = new boolean[size];
+			for (int column = 0; column < size; column++) {
+				if (row.hasCell(column)) {
+					present[column] = true;
+					styles[column] = row.getStyleIndex(column);
+					// Error cells are left blank, as in the in-memory copy
+					values[column] = row.getCellType(column) == CellType.ERROR ? null : row.getValue(column);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Worker task parsing and filtering the first sheet of a source file.
+	 */
+	private class SourceTask implements Runnable {
+
+		private final File sourceFile;
+		private final BlockingQueue<List<BufferedRow>> queue = new ArrayBlockingQueue<>(queueCapacity);
+		private volatile XlsxEventReader reader;
+		private volatile Throwable error;
+
+		// Whether the reader was closed, guarded by this task.
+		private boolean closed;
+
+		SourceTask(File sourceFile) {
+			this.sourceFile = sourceFile;
+		}
+
+		@Override
+		public void run() {
+			try {
+				XlsxEventReader openedReader = new XlsxEventReader(sourceFile);
+				synchronized (this) {
+					if (closed) {
+						// Opened after the merge stopped
+						openedReader.close();
+						return;
+					}
+					reader = openedReader;
+				}
+				List<String> sheetNames = reader.getSheetNames();
+				if (!sheetNames.isEmpty()) {
+					RowFilter[] rowFilter = { RowFilter.or() };
+					List<List<BufferedRow>> pending = new ArrayList<>();
+					pending.add(new ArrayList<BufferedRow>(batchSize));
+					reader.readSheet(sheetNames.get(0), (sheetName, row) -> {
+						if (row.getRowNum() == 0) {
+							// Resolve the checked columns from the header values
+							Map<String, Integer> headerMap = XlsxUtils.getHeaderMap(row);
+							rowFilter[0] = RowFilter.compile(headerMap, columnsToCheck, specificValue);
+						} else if (!rowFilter[0].matches(row)) {
+							return;
+						}
+						List<BufferedRow> current = pending.get(0);
+						current.add(new BufferedRow(row));
+						if (current.size() >= batchSize) {
+							put(current);
+							pending.set(0, new ArrayList<BufferedRow>(batchSize));
+						}
+					});
+					if (!pending.get(0).isEmpty()) {
+						put(pending.get(0));
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				logger.error("An error occurred while reading file: " + sourceFile, e);
+				error = e;
+			} finally {
+				try {
+					queue.put(END_OF_FILE);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		/**
+		 * Hands a batch to the writer, waiting while the queue of this file is full.
+		 *
+		 * @param batch the batch of rows
+		 */
+		private void put(List<BufferedRow> batch) {
+			try {
+				queue.put(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Reading of file " + sourceFile + " interrupted", e);
+			}
+		}
+
+		/**
+		 * Closes the streaming reader of this file, if it was opened, or else makes
+		 * the worker close it as soon as it is opened.
+		 */
+		private void closeReader() {
+			XlsxEventReader openReader;
+			synchronized (this) {
+				closed = true;
+				openReader = reader;
+				reader = null;
+			}
+			if (openReader != null) {
+				openReader.close();
+			}
+		}
+	}
+}
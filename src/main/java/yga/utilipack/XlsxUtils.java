@@ -4,13 +4,31 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.poi.ooxml.POIXMLDocumentPart;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.CellType;
@@ -21,7 +39,7 @@ import org.apache.poi.ss.usermodel.ConditionalFormattingRule;
 import org.apache.poi.ss.usermodel.CreationHelper;
 import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Drawing;
-import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Hyperlink;
 import org.apache.poi.ss.usermodel.IndexedColors;
 import org.apache.poi.ss.usermodel.PatternFormatting;
 import org.apache.poi.ss.usermodel.RichTextString;
@@ -30,11 +48,13 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFCell;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
-import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.model.CommentsTable;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTComment;
 
 /**
  * Utility class for working with XLSX files.
@@ -43,6 +63,19 @@ public class XlsxUtils {
 	
 	static Logger logger = LogManager.getLogger(XlsxUtils.class);
 
+	/** Default number of rows kept in memory by a streaming output workbook. */
+	public static final int DEFAULT_ROW_ACCESS_WINDOW = 100;
+
+	/** Decimal separator of the numbers read from CSV files. */
+	private static final char DECIMAL_SEPARATOR = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+	/** Format of the dd/MM/yyyy dates read from CSV files. */
+	private static final DateTimeFormatter SLASHED_DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+	/** Cell style caches of the output workbooks, dropped with their workbook. */
+	private static final Map<Workbook, CellStyleCache> styleCaches = Collections
+			.synchronizedMap(new WeakHashMap<Workbook, CellStyleCache>());
+
 	/**
 	 * Reads an Excel file and returns a Workbook object.
 	 *
@@ -56,6 +89,38 @@ public class XlsxUtils {
 		}
 	}
 
+	/**
+	 * Reads an Excel file keeping only the given columns. The file is streamed
+	 * with an {@link XlsxEventReader} and only the cells of the projected columns,
+	 * found by their normalized header, are loaded into the returned workbook, at
+	 * their original position and with their style. The header rows are kept in
+	 * full so that header lookups work as on the complete workbook. Formula cells
+	 * hold their cached value, comments and hyperlinks are not loaded.
+	 *
+	 * @param filePath         the path to the Excel file
+	 * @param projectedHeaders the headers of the columns to load, null or empty to
+	 *                         load every column
+	 * @return the Workbook object
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static Workbook readExcelFile(String filePath, String[] projectedHeaders) throws IOException {
+		XSSFWorkbook workbook = new XSSFWorkbook();
+		try (XlsxEventReader reader = new XlsxEventReader(new File(filePath))) {
+			reader.setColumnProjection(projectedHeaders);
+			for (String sheetName : reader.getSheetNames()) {
+				workbook.createSheet(sheetName);
+			}
+			reader.readSheets((sheetName, sourceRow) -> {
+				Row targetRow = workbook.getSheet(sheetName).createRow(sourceRow.getRowNum());
+				copyEventRowWithStyles(sourceRow, targetRow, workbook, reader);
+			});
+		} catch (IOException | RuntimeException e) {
+			workbook.close();
+			throw e;
+		}
+		return workbook;
+	}
+
 	/**
 	 * Extracts the sheet name from a file name based on parentheses.
 	 *
@@ -74,7 +139,55 @@ public class XlsxUtils {
 	}
 
 	/**
-	 * Writes a Workbook object to an Excel file.
+	 * Creates an output workbook in streaming mode. Only the last
+	 * {@code rowAccessWindowSize} rows of each sheet are kept in memory, older rows
+	 * are flushed to compressed temporary files, so the heap used by
+	 * {@link #copyRowsToOutputSheet} stays flat whatever the number of rows.
+	 * Flushed rows can no longer be read back, so the sheets of such a workbook
+	 * are meant to be written only.
+	 *
+	 * @param rowAccessWindowSize the number of rows kept in memory per sheet
+	 * @return the streaming Workbook object
+	 */
+	public static SXSSFWorkbook createStreamingWorkbook(int rowAccessWindowSize) {
+		SXSSFWorkbook workbook = new SXSSFWorkbook(rowAccessWindowSize);
+		workbook.setCompressTempFiles(true);
+		return workbook;
+	}
+
+	/**
+	 * Creates an output workbook in streaming mode with the default row window.
+	 *
+	 * @return the streaming Workbook object
+	 * @see #createStreamingWorkbook(int)
+	 */
+	public static SXSSFWorkbook createStreamingWorkbook() {
+		return createStreamingWorkbook(DEFAULT_ROW_ACCESS_WINDOW);
+	}
+
+	/**
+	 * Retrieves the cell style cache of an output workbook. Every cell copied into
+	 * the workbook by {@link #copyRowsToOutputSheet} gets its style through this
+	 * cache, so identical source styles share one style in the output, and the
+	 * cache counters tell how many styles a merge reused and created.
+	 *
+	 * @param outputWorkbook the output Workbook object
+	 * @return the cell style cache of the workbook
+	 */
+	public static CellStyleCache getStyleCache(Workbook outputWorkbook) {
+		synchronized (styleCaches) {
+			CellStyleCache styleCache = styleCaches.get(outputWorkbook);
+			if (styleCache == null) {
+				styleCache = new CellStyleCache();
+				styleCaches.put(outputWorkbook, styleCache);
+			}
+			return styleCache;
+		}
+	}
+
+	/**
+	 * Writes a Workbook object to an Excel file. The temporary files of a
+	 * streaming workbook are deleted once it has been written.
 	 *
 	 * @param workbook the Workbook object
 	 * @param filePath the path to the output Excel file
@@ -83,13 +196,18 @@ public class XlsxUtils {
 	public static void writeExcelFile(Workbook workbook, String filePath) throws IOException {
 		try (FileOutputStream fos = new FileOutputStream(filePath)) {
 			workbook.write(fos);
+		} finally {
+			if (workbook instanceof SXSSFWorkbook && !((SXSSFWorkbook) workbook).dispose()) {
+				logger.warn("Could not delete the temporary files of the streaming workbook written to " + filePath);
+			}
 		}
 	}
 
 	/**
 	 * Copies rows from a source sheet to a target sheet, appending data rows
 	 * without overwriting existing content. Applies styles and conditional
-	 * formatting.
+	 * formatting. The output workbook may be a streaming one created by
+	 * {@link #createStreamingWorkbook(int)}.
 	 *
 	 * @param sourceSheet        the source sheet
 	 * @param targetSheet        the target sheet
@@ -101,36 +219,67 @@ public class XlsxUtils {
 	 */
 	public static void copyRowsToOutputSheet(Sheet sourceSheet, Sheet targetSheet, Workbook outputWorkbook,
 			String[] columnsToCheck, Set<String> usedSheetNames, String specificValue,  boolean includeEmptySheets) {
+		copyRowsToOutputSheet(sourceSheet, targetSheet, outputWorkbook, columnsToCheck, usedSheetNames, specificValue,
+				includeEmptySheets, true);
+	}
+
+	/**
+	 * Copies rows from a source sheet to a target sheet like
+	 * {@link #copyRowsToOutputSheet(Sheet, Sheet, Workbook, String[], Set, String, boolean)},
+	 * optionally without the cell comments and hyperlinks, which is faster on
+	 * heavily annotated sheets.
+	 *
+	 * @param sourceSheet        the source sheet
+	 * @param targetSheet        the target sheet
+	 * @param outputWorkbook     the output Workbook object
+	 * @param columnsToCheck     the columns to check based on header values
+	 * @param usedSheetNames     the set of used sheet names
+	 * @param specificValue      the specific value to search for (can be null or
+	 *                           empty)
+	 * @param includeEmptySheets whether to include sheets without data rows (only
+	 *                           header)
+	 * @param copyAnnotations    whether to copy the cell comments and hyperlinks
+	 */
+	public static void copyRowsToOutputSheet(Sheet sourceSheet, Sheet targetSheet, Workbook outputWorkbook,
+			String[] columnsToCheck, Set<String> usedSheetNames, String specificValue, boolean includeEmptySheets,
+			boolean copyAnnotations) {
+
+		// Index the comments and hyperlinks of the source sheet by row
+		AnnotationCopier annotationCopier = copyAnnotations
+				? new AnnotationCopier(sourceSheet, targetSheet, outputWorkbook)
+				: null;
 
 		// Create a map of header values to column indices
 		Map<String, Integer> headerMap = getHeaderMap(sourceSheet);
 
 		// Copy header row with styles if it's not already in targetSheet
 		Row sourceHeaderRow = sourceSheet.getRow(0);
-		Row targetHeaderRow = targetSheet.getRow(0);
-		if (sourceHeaderRow != null && targetHeaderRow == null) {
-			targetHeaderRow = targetSheet.createRow(0);
-			copyRowWithStyles(sourceHeaderRow, targetHeaderRow, outputWorkbook, headerMap, columnsToCheck);
+		if (sourceHeaderRow != null && !hasHeaderRow(targetSheet)) {
+			Row targetHeaderRow = targetSheet.createRow(0);
+			copyRowWithStyles(sourceHeaderRow, targetHeaderRow, outputWorkbook, annotationCopier);
 		}
 
 		// Apply auto filter to header row in the target sheet
 		applyAutoFilter(targetSheet);
 
 		// Determine the starting index for new rows in targetSheet
-		int lastRowIndex = targetSheet.getLastRowNum();
+		int lastRowIndex = getLastRowIndex(targetSheet);
 		int rowIndex = lastRowIndex >= 0 ? lastRowIndex + 1 : 1; // Start new rows after existing content or after
 																	// header row if no content
 
 		int rowsCopied = 0; // Counter for the number of data rows copied
 
+		// Resolve the checked columns once for the whole sheet
+		RowFilter rowFilter = RowFilter.compile(headerMap, columnsToCheck, specificValue);
+
 		// Copy data rows with styles and conditional formatting
 		for (Row sourceRow : sourceSheet) {
 			if (sourceRow.getRowNum() == 0) {
 				continue; // Skip header row
 			}
-			if (isTargetRow(sourceRow, columnsToCheck, headerMap, specificValue)) {
+			if (rowFilter.matches(sourceRow)) {
 				Row targetRow = targetSheet.createRow(rowIndex);
-				copyRowWithStyles(sourceRow, targetRow, outputWorkbook, headerMap, columnsToCheck);
+				copyRowWithStyles(sourceRow, targetRow, outputWorkbook, annotationCopier);
 				rowIndex++;
 				rowsCopied++;
 			}
@@ -143,13 +292,128 @@ public class XlsxUtils {
 		}
 	}
 
+	/**
+	 * Copies rows from a sheet read in streaming mode to a target sheet, with the
+	 * same header, auto filter and usedSheetNames semantics as
+	 * {@link #copyRowsToOutputSheet(Sheet, Sheet, Workbook, String[], Set, String, boolean)},
+	 * without loading the source workbook in memory. Formula cells are copied as
+	 * their cached value, comments and hyperlinks are not copied.
+	 *
+	 * @param reader             the streaming reader opened on the source file
+	 * @param sourceSheetName    the name of the source sheet
+	 * @param targetSheet        the target sheet
+	 * @param outputWorkbook     the output Workbook object
+	 * @param columnsToCheck     the columns to check based on header values
+	 * @param usedSheetNames     the set of used sheet names
+	 * @param specificValue      the specific value to search for (can be null or
+	 *                           empty)
+	 * @param includeEmptySheets whether to include sheets without data rows (only
+	 *                           header)
+	 * @throws IOException if an I/O error occurs while reading the source sheet
+	 */
+	public static void copyRowsToOutputSheet(XlsxEventReader reader, String sourceSheetName, Sheet targetSheet,
+			Workbook outputWorkbook, String[] columnsToCheck, Set<String> usedSheetNames, String specificValue,
+			boolean includeEmptySheets) throws IOException {
+		EventRowCopier copier = new EventRowCopier(reader, targetSheet, outputWorkbook, columnsToCheck,
+				specificValue);
+		reader.readSheet(sourceSheetName, copier);
+
+		// Determine if the sheet should be added to usedSheetNames based on
+		// includeEmptySheets
+		if (includeEmptySheets || copier.rowsCopied > 0) {
+			usedSheetNames.add(targetSheet.getSheetName());
+		}
+	}
+
+	/**
+	 * Row handler copying the rows of a streamed sheet to a target sheet.
+	 */
+	private static class EventRowCopier implements XlsxEventReader.RowHandler {
+
+		private final XlsxEventReader reader;
+		private final Sheet targetSheet;
+		private final Workbook outputWorkbook;
+		private final String[] columnsToCheck;
+		private final String specificValue;
+		private RowFilter rowFilter;
+		private int rowIndex;
+		private int rowsCopied;
+
+		EventRowCopier(XlsxEventReader reader, Sheet targetSheet, Workbook outputWorkbook, String[] columnsToCheck,
+				String specificValue) {
+			this.reader = reader;
+			this.targetSheet = targetSheet;
+			this.outputWorkbook = outputWorkbook;
+			this.columnsToCheck = columnsToCheck;
+			this.specificValue = specificValue;
+			this.rowFilter = RowFilter.compile(new HashMap<String, Integer>(), columnsToCheck, specificValue);
+
+			// Start new rows after existing content or after header row if no content
+			int lastRowIndex = getLastRowIndex(targetSheet);
+			this.rowIndex = lastRowIndex >= 0 ? lastRowIndex + 1 : 1;
+		}
+
+		@Override
+		public void handleRow(String sheetName, XlsxEventReader.EventRow sourceRow) {
+			if (sourceRow.getRowNum() == 0) {
+				// Resolve the checked columns from the header values
+				rowFilter = RowFilter.compile(getHeaderMap(sourceRow), columnsToCheck, specificValue);
+
+				// Copy header row with styles if it's not already in targetSheet
+				if (!hasHeaderRow(targetSheet)) {
+					copyEventRowWithStyles(sourceRow, targetSheet.createRow(0), outputWorkbook, reader);
+				}
+
+				// Apply auto filter to header row in the target sheet
+				applyAutoFilter(targetSheet);
+				return;
+			}
+			if (rowFilter.matches(sourceRow)) {
+				Row targetRow = targetSheet.createRow(rowIndex);
+				copyEventRowWithStyles(sourceRow, targetRow, outputWorkbook, reader);
+				rowIndex++;
+				rowsCopied++;
+			}
+		}
+	}
+
+	/**
+	 * Checks if the header row of a sheet has already been written. Rows flushed
+	 * by a streaming sheet are no longer returned by {@link Sheet#getRow(int)},
+	 * so they are looked up through the flushed row counter instead.
+	 *
+	 * @param sheet the sheet to check
+	 * @return true if the sheet has a header row, false otherwise
+	 */
+	static boolean hasHeaderRow(Sheet sheet) {
+		if (sheet.getRow(0) != null) {
+			return true;
+		}
+		return sheet instanceof SXSSFSheet && ((SXSSFSheet) sheet).getLastFlushedRowNum() >= 0;
+	}
+
+	/**
+	 * Retrieves the index of the last row of a sheet, including the rows already
+	 * flushed to disk by a streaming sheet.
+	 *
+	 * @param sheet the sheet to read
+	 * @return the index of the last row, or -1 if the sheet has no row
+	 */
+	static int getLastRowIndex(Sheet sheet) {
+		int lastRowIndex = sheet.getLastRowNum();
+		if (sheet instanceof SXSSFSheet) {
+			lastRowIndex = Math.max(lastRowIndex, ((SXSSFSheet) sheet).getLastFlushedRowNum());
+		}
+		return lastRowIndex;
+	}
+
 	/**
 	 * Retrieves a map of header values to their column indices.
 	 *
 	 * @param sheet the sheet to read the header from
 	 * @return a map of header values to column indices
 	 */
-	private static Map<String, Integer> getHeaderMap(Sheet sheet) {
+	static Map<String, Integer> getHeaderMap(Sheet sheet) {
 		Map<String, Integer> headerMap = new HashMap<>();
 		Row headerRow = sheet.getRow(0);
 		if (headerRow != null) {
@@ -161,97 +425,197 @@ public class XlsxUtils {
 		return headerMap;
 	}
 
+	/**
+	 * Retrieves a map of header values to their column indices from a streamed
+	 * header row.
+	 *
+	 * @param headerRow the header row
+	 * @return a map of header values to column indices
+	 */
+	static Map<String, Integer> getHeaderMap(XlsxEventReader.EventRow headerRow) {
+		Map<String, Integer> headerMap = new HashMap<>();
+		for (int column = 0; column < headerRow.getLastCellNum(); column++) {
+			if (headerRow.getCellType(column) == CellType.STRING) {
+				headerMap.put(normalizeHeaderName(headerRow.getStringValue(column)), column);
+			}
+		}
+		return headerMap;
+	}
+
 	/**
 	 * Normalizes a header name by removing spaces and converting to lower case.
 	 *
 	 * @param headerName the header name to normalize
 	 * @return the normalized header name
 	 */
-	private static String normalizeHeaderName(String headerName) {
+	static String normalizeHeaderName(String headerName) {
 		return headerName.trim().replaceAll("\\s+", "").toLowerCase();
 	}
 
 	/**
-	 * Checks if a row meets the criteria based on the columns to check and a specific value.
-	 *
-	 * @param sourceRow      the source row
-	 * @param columnsToCheck the columns to check based on header values
-	 * @param headerMap      the map of header values to column indices
-	 * @param specificValue  the specific value to search for (can be null or empty)
-	 * @return true if the row meets the criteria, false otherwise
-	 */
-	private static boolean isTargetRow(Row sourceRow, String[] columnsToCheck, Map<String, Integer> headerMap, String specificValue) {
-	    for (String columnHeader : columnsToCheck) {
-	        String normalizedHeader = normalizeHeaderName(columnHeader);
-	        Integer columnIndex = headerMap.get(normalizedHeader);
-	        if (columnIndex != null && columnIndex >= 0) { // Ensure columnIndex is valid
-	            Cell cell = sourceRow.getCell(columnIndex);
-	            if (cell == null || cell.getCellType() == CellType.BLANK || cell.toString().isEmpty()) {
-	                return true;
-	            }
-	            // If a specific value is provided, check if the cell matches this value, ignoring the data type
-	            if (specificValue != null && !specificValue.isEmpty()) {
-	                if (specificValue.equals(cell.toString())) {
-	                    return true;
-	                }
-	            }
-	        }
-	    }
-	    return false;
-	}
-
-	/**
-	 * Applies conditional formatting to a workbook based on specified columns.
+	 * Applies conditional formatting to a workbook based on specified columns. The
+	 * rows of a streaming workbook that were already flushed cannot be read back,
+	 * so this pass only accepts in-memory workbooks.
 	 *
 	 * @param workbook           the Workbook object
 	 * @param columnsToCheck     the columns to check for conditional formatting
 	 * @param includeEmptySheets whether to include sheets without data rows
+	 * @throws IllegalArgumentException if the workbook is a streaming workbook
 	 */
 	public static void applyConditionalFormattingToWorkbook(Workbook workbook, String[] columnsToCheck,
 			boolean includeEmptySheets) {
-		for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+		applyConditionalFormattingToWorkbook(workbook, columnsToCheck, includeEmptySheets, 1);
+	}
+
+	/**
+	 * Applies conditional formatting to a workbook based on specified columns,
+	 * scanning the sheets in parallel. The sheets are only read by the worker
+	 * threads, which compute the ranges to format; the rules are then added and
+	 * the empty sheets removed by the calling thread, in sheet order, so the
+	 * workbook ends up the same as with a sequential run.
+	 *
+	 * @param workbook           the Workbook object
+	 * @param columnsToCheck     the columns to check for conditional formatting
+	 * @param includeEmptySheets whether to include sheets without data rows
+	 * @param threads            the maximum number of sheets scanned at the same
+	 *                           time, 1 to scan them on the calling thread
+	 * @throws IllegalArgumentException if the workbook is a streaming workbook,
+	 *                                  whose flushed rows would read as absent and
+	 *                                  their sheets as empty
+	 */
+	public static void applyConditionalFormattingToWorkbook(Workbook workbook, String[] columnsToCheck,
+			boolean includeEmptySheets, int threads) {
+		if (workbook instanceof SXSSFWorkbook) {
+			String errorMessage = "Conditional formatting cannot be applied to a streaming workbook, "
+					+ "its flushed rows cannot be read back";
+			logger.error(errorMessage);
+			throw new IllegalArgumentException(errorMessage);
+		}
+		List<List<CellRangeAddress>> sheetRanges = scanConditionalFormattingRanges(workbook, columnsToCheck, threads);
+
+		// Commit the changes in sheet order, the indices shifting as sheets are removed
+		int i = 0;
+		for (List<CellRangeAddress> ranges : sheetRanges) {
 			Sheet sheet = workbook.getSheetAt(i);
-			Map<String, Integer> headerMap = getHeaderMap(sheet);
-			boolean hasDataRows = false;
-			for (String columnHeader : columnsToCheck) {
-				String normalizedHeader = normalizeHeaderName(columnHeader);
-				Integer columnIndex = headerMap.get(normalizedHeader);
-				if (columnIndex != null && columnIndex >= 0) { // Ensure columnIndex is valid
-					for (int j = 1; j <= sheet.getLastRowNum(); j++) { // Start from the second row (index 1)
-						Row row = sheet.getRow(j);
-						if (row != null) {
-							Cell firstCell = row.getCell(0);
-							if (firstCell == null || firstCell.getCellType() == CellType.BLANK) {
-								continue; // Skip this row if the first cell is empty
-							}
-							Cell cell = row.getCell(columnIndex);
-							if (cell == null) {
-								cell = row.createCell(columnIndex);
-							}
-							applyConditionalFormatting(cell, workbook);
-							hasDataRows = true;
-						}
-					}
-				}
+			boolean hasDataRows = !ranges.isEmpty();
+			if (hasDataRows) {
+				applyConditionalFormatting(sheet, ranges);
 			}
 
 			// Remove the sheet if it does not have data rows and includeEmptySheets is
 			// false
 			if (!includeEmptySheets && !hasDataRows) {
 				workbook.removeSheetAt(i);
-				i--; // Adjust the index since we removed the current sheet
+			} else {
+				i++;
 			}
 		}
 	}
 
 	/**
-	 * Applies conditional formatting to a cell.
+	 * Computes the conditional formatting ranges of every sheet of a workbook,
+	 * without modifying it.
 	 *
-	 * @param cell     the cell to apply conditional formatting to
-	 * @param workbook the Workbook object
+	 * @param workbook       the Workbook object
+	 * @param columnsToCheck the columns to check for conditional formatting
+	 * @param threads        the maximum number of sheets scanned at the same time
+	 * @return the ranges of each sheet, in sheet order
 	 */
-	private static void applyConditionalFormatting(Cell cell, Workbook workbook) {
-		Sheet sheet = cell.getSheet();
+	private static List<List<CellRangeAddress>> scanConditionalFormattingRanges(Workbook workbook,
+			String[] columnsToCheck, int threads) {
+		int sheetCount = workbook.getNumberOfSheets();
+		List<List<CellRangeAddress>> sheetRanges = new ArrayList<>(sheetCount);
+		if (threads <= 1 || sheetCount <= 1) {
+			for (int i = 0; i < sheetCount; i++) {
+				sheetRanges.add(getConditionalFormattingRanges(workbook.getSheetAt(i), columnsToCheck));
+			}
+			return sheetRanges;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, sheetCount));
+		List<Future<List<CellRangeAddress>>> futures = new ArrayList<>(sheetCount);
+		try {
+			for (int i = 0; i < sheetCount; i++) {
+				Sheet sheet = workbook.getSheetAt(i);
+				futures.add(executor.submit(() -> getConditionalFormattingRanges(sheet, columnsToCheck)));
+			}
+			for (Future<List<CellRangeAddress>> future : futures) {
+				sheetRanges.add(future.get());
+			}
+			return sheetRanges;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Conditional formatting scan interrupted", e);
+		} catch (ExecutionException e) {
+			logger.error("An error occurred while scanning the sheets for conditional formatting", e.getCause());
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new IllegalStateException("Could not scan the sheets for conditional formatting", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Computes the ranges of a sheet that need conditional formatting: the cells
+	 * of the checked columns in the data rows, a data row being a row whose first
+	 * cell is not empty. Contiguous data rows are merged into one range per
+	 * column.
+	 *
+	 * @param sheet          the sheet to scan
+	 * @param columnsToCheck the columns to check for conditional formatting
+	 * @return the list of column ranges, empty if the sheet has no data rows
+	 */
+	private static List<CellRangeAddress> getConditionalFormattingRanges(Sheet sheet, String[] columnsToCheck) {
+		List<CellRangeAddress> ranges = new ArrayList<>();
+		Map<String, Integer> headerMap = getHeaderMap(sheet);
+		Set<Integer> columnIndexes = new LinkedHashSet<>();
+		for (String columnHeader : columnsToCheck) {
+			Integer columnIndex = headerMap.get(normalizeHeaderName(columnHeader));
+			if (columnIndex != null && columnIndex >= 0) { // Ensure columnIndex is valid
+				columnIndexes.add(columnIndex);
+			}
+		}
+		if (columnIndexes.isEmpty()) {
+			return ranges;
+		}
+
+		// Find the runs of contiguous data rows, starting from the second row (index 1)
+		List<int[]> dataRowRuns = new ArrayList<>();
+		int runStart = -1;
+		int lastRowNum = sheet.getLastRowNum();
+		for (int j = 1; j <= lastRowNum + 1; j++) {
+			boolean isDataRow = false;
+			if (j <= lastRowNum) {
+				Row row = sheet.getRow(j);
+				if (row != null) {
+					Cell firstCell = row.getCell(0);
+					isDataRow = firstCell != null && firstCell.getCellType() != CellType.BLANK;
+				}
+			}
+			if (isDataRow && runStart < 0) {
+				runStart = j;
+			} else if (!isDataRow && runStart >= 0) {
+				dataRowRuns.add(new int[] { runStart, j - 1 });
+				runStart = -1;
+			}
+		}
+
+		for (int columnIndex : columnIndexes) {
+			for (int[] run : dataRowRuns) {
+				ranges.add(new CellRangeAddress(run[0], run[1], columnIndex, columnIndex));
+			}
+		}
+		return ranges;
+	}
+
+	/**
+	 * Applies conditional formatting to ranges of a sheet, with one rule pair
+	 * shared by all the ranges.
+	 *
+	 * @param sheet  the sheet to apply conditional formatting to
+	 * @param ranges the ranges to format
+	 */
+	private static void applyConditionalFormatting(Sheet sheet, List<CellRangeAddress> ranges) {
 		SheetConditionalFormatting sheetCF = sheet.getSheetConditionalFormatting();
 
 		// Create rule 1: RED fill if cell is empty ("")
@@ -266,7 +630,7 @@ public class XlsxUtils {
 		fill2.setFillBackgroundColor(IndexedColors.LIGHT_GREEN.getIndex());
 		fill2.setFillPattern(PatternFormatting.SOLID_FOREGROUND);
 
-		CellRangeAddress[] regions = { CellRangeAddress.valueOf(cell.getAddress().formatAsString()) };
+		CellRangeAddress[] regions = ranges.toArray(new CellRangeAddress[0]);
 
 		sheetCF.addConditionalFormatting(regions, rule1, rule2);
 	}
@@ -276,7 +640,7 @@ public class XlsxUtils {
 	 *
 	 * @param sheet the sheet to apply the auto filter to
 	 */
-	private static void applyAutoFilter(Sheet sheet) {
+	static void applyAutoFilter(Sheet sheet) {
 		Row headerRow = sheet.getRow(0);
 		if (headerRow != null) {
 			int lastCellNum = headerRow.getLastCellNum();
@@ -290,15 +654,17 @@ public class XlsxUtils {
 	/**
 	 * Copies a row with styles from the source row to the target row.
 	 *
-	 * @param sourceRow      the source row
-	 * @param targetRow      the target row
-	 * @param outputWorkbook the output Workbook object
-	 * @param headerMap      the map of header values to column indices
-	 * @param columnsToCheck the columns to check based on header values
+	 * @param sourceRow        the source row
+	 * @param targetRow        the target row
+	 * @param outputWorkbook   the output Workbook object
+	 * @param annotationCopier the copier of the comments and hyperlinks of the
+	 *                         source sheet, or null to skip them
 	 */
 	private static void copyRowWithStyles(Row sourceRow, Row targetRow, Workbook outputWorkbook,
-			Map<String, Integer> headerMap, String[] columnsToCheck) {
+			AnnotationCopier annotationCopier) {
 		targetRow.setHeight(sourceRow.getHeight());
+		CellStyleCache styleCache = getStyleCache(outputWorkbook);
+		Workbook sourceWorkbook = sourceRow.getSheet().getWorkbook();
 
 		for (int columnIndex = sourceRow.getFirstCellNum(); columnIndex < sourceRow.getLastCellNum(); columnIndex++) {
 			Cell sourceCell = sourceRow.getCell(columnIndex);
@@ -330,42 +696,77 @@ public class XlsxUtils {
 					break;
 				}
 
-				// Copy cell style
-				CellStyle sourceCellStyle = sourceCell.getCellStyle();
-				CellStyle targetCellStyle = outputWorkbook.createCellStyle();
-				targetCellStyle.cloneStyleFrom(sourceCellStyle);
-				targetCell.setCellStyle(targetCellStyle);
+				// Copy cell style, sharing identical styles in the output workbook
+				targetCell.setCellStyle(styleCache.getStyle(outputWorkbook, sourceWorkbook, sourceCell.getCellStyle()));
+			}
+		}
+
+		// Copy cell comments and hyperlinks
+		if (annotationCopier != null) {
+			annotationCopier.copyRow(sourceRow, targetRow);
+		}
+	}
 
-				// Copy cell comments
-				if (sourceCell.getCellComment() != null) {
-					copyCellComment(sourceCell, targetCell, outputWorkbook);
-				}
+	/**
+	 * Copies a streamed row with styles to the target row.
+	 *
+	 * @param sourceRow      the source row
+	 * @param targetRow      the target row
+	 * @param outputWorkbook the output Workbook object
+	 * @param reader         the streaming reader giving access to the source styles
+	 */
+	private static void copyEventRowWithStyles(XlsxEventReader.EventRow sourceRow, Row targetRow,
+			Workbook outputWorkbook, XlsxEventReader reader) {
+		CellStyleCache styleCache = getStyleCache(outputWorkbook);
+		for (int columnIndex = 0; columnIndex < sourceRow.getLastCellNum(); columnIndex++) {
+			if (!sourceRow.hasCell(columnIndex)) {
+				continue;
+			}
+			Cell targetCell = targetRow.createCell(columnIndex);
 
-				// Copy hyperlinks
-				if (sourceCell.getHyperlink() != null) {
-					targetCell.setHyperlink(sourceCell.getHyperlink());
+			// Copy cell value based on its type
+			switch (sourceRow.getCellType(columnIndex)) {
+			case STRING:
+				targetCell.setCellValue(sourceRow.getStringValue(columnIndex));
+				break;
+			case NUMERIC:
+				if (sourceRow.isDate(columnIndex)) {
+					targetCell.setCellValue(sourceRow.getDateValue(columnIndex));
+				} else {
+					targetCell.setCellValue(sourceRow.getNumericValue(columnIndex));
 				}
+				break;
+			case BOOLEAN:
+				targetCell.setCellValue(sourceRow.getBooleanValue(columnIndex));
+				break;
+			case BLANK:
+				targetCell.setBlank();
+				break;
+			default:
+				break;
 			}
+
+			// Copy cell style, sharing identical styles in the output workbook
+			int styleIndex = sourceRow.getStyleIndex(columnIndex);
+			targetCell.setCellStyle(styleCache.getStyle(outputWorkbook, reader, reader.getCellStyle(styleIndex)));
 		}
 	}
 
 	/**
-	 * Copies a cell comment from a source cell to a target cell.
+	 * Copies a cell comment to a target cell.
 	 *
-	 * @param sourceCell     the source cell
-	 * @param targetCell     the target cell
-	 * @param outputWorkbook the output Workbook object
+	 * @param sourceComment the source comment
+	 * @param targetCell    the target cell
+	 * @param drawing       the drawing of the target sheet
+	 * @param factory       the creation helper of the output workbook
 	 */
-	private static void copyCellComment(Cell sourceCell, Cell targetCell, Workbook outputWorkbook) {
-		Drawing<?> drawing = targetCell.getSheet().createDrawingPatriarch();
-
+	private static void copyCellComment(Comment sourceComment, Cell targetCell, Drawing<?> drawing,
+			CreationHelper factory) {
 		// Remove existing comment if any
 		if (targetCell.getCellComment() != null) {
 			targetCell.removeCellComment();
 		}
 
-		Comment sourceComment = sourceCell.getCellComment();
-		CreationHelper factory = outputWorkbook.getCreationHelper();
 		ClientAnchor anchor = factory.createClientAnchor();
 
 		anchor.setCol1(targetCell.getColumnIndex());
@@ -373,51 +774,440 @@ public class XlsxUtils {
 		anchor.setRow1(targetCell.getRowIndex());
 		anchor.setRow2(targetCell.getRowIndex() + 5); // Adjust row span as needed
 
+		// The comment is attached to the cell at the top left corner of its anchor
 		Comment targetComment = drawing.createCellComment(anchor);
 
 		RichTextString str = factory.createRichTextString(sourceComment.getString().getString());
 		targetComment.setString(str);
 		targetComment.setAuthor(sourceComment.getAuthor());
+	}
+
+	/**
+	 * Copies the comments and hyperlinks of the rows of a source sheet to a target
+	 * sheet. The comments and hyperlinks of the source sheet are indexed by row
+	 * once, instead of being looked up for every cell, and the drawing of the
+	 * target sheet and the creation helper are obtained once for all the copied
+	 * comments.
+	 */
+	private static class AnnotationCopier {
+
+		private final Map<Integer, List<Comment>> commentsByRow = new HashMap<>();
+		private final Map<Integer, List<Hyperlink>> hyperlinksByRow = new HashMap<>();
+		private final Sheet targetSheet;
+		private final CreationHelper factory;
+
+		// Drawing of the target sheet, created with the first comment.
+		private Drawing<?> drawing;
+
+		AnnotationCopier(Sheet sourceSheet, Sheet targetSheet, Workbook outputWorkbook) {
+			this.targetSheet = targetSheet;
+			this.factory = outputWorkbook.getCreationHelper();
+			for (Comment comment : getComments(sourceSheet)) {
+				commentsByRow.computeIfAbsent(comment.getRow(), row -> new ArrayList<>()).add(comment);
+			}
+			for (Hyperlink hyperlink : sourceSheet.getHyperlinkList()) {
+				for (int row = hyperlink.getFirstRow(); row <= hyperlink.getLastRow(); row++) {
+					hyperlinksByRow.computeIfAbsent(row, key -> new ArrayList<>()).add(hyperlink);
+				}
+			}
+		}
 
-		targetCell.setCellComment(targetComment);
+		/**
+		 * Retrieves the comments of a sheet. The comments of an XSSF sheet are read
+		 * from its comments part, without looking up their VML shape, a search
+		 * through all the shapes of the sheet done for every comment by
+		 * {@link Sheet#getCellComments()}.
+		 *
+		 * @param sheet the sheet
+		 * @return the comments of the sheet
+		 */
+		private static Collection<? extends Comment> getComments(Sheet sheet) {
+			if (!(sheet instanceof XSSFSheet)) {
+				return sheet.getCellComments().values();
+			}
+			List<Comment> comments = new ArrayList<>();
+			for (POIXMLDocumentPart part : ((XSSFSheet) sheet).getRelations()) {
+				if (part instanceof CommentsTable) {
+					CommentsTable commentsTable = (CommentsTable) part;
+					for (CTComment ctComment : commentsTable.getCTComments().getCommentList().getCommentArray()) {
+						comments.add(new XSSFComment(commentsTable, ctComment, null));
+					}
+				}
+			}
+			return comments;
+		}
+
+		/**
+		 * Copies the comments and hyperlinks of the cells of a source row to the
+		 * cells of the target row, which must already have been created.
+		 *
+		 * @param sourceRow the source row
+		 * @param targetRow the target row
+		 */
+		void copyRow(Row sourceRow, Row targetRow) {
+			List<Comment> comments = commentsByRow.get(sourceRow.getRowNum());
+			if (comments != null) {
+				if (drawing == null) {
+					drawing = targetSheet.createDrawingPatriarch();
+				}
+				for (Comment comment : comments) {
+					if (sourceRow.getCell(comment.getColumn()) != null) {
+						copyCellComment(comment, targetRow.getCell(comment.getColumn()), drawing, factory);
+					}
+				}
+			}
+
+			List<Hyperlink> hyperlinks = hyperlinksByRow.get(sourceRow.getRowNum());
+			if (hyperlinks != null) {
+				for (Hyperlink hyperlink : hyperlinks) {
+					int firstColumn = Math.max(hyperlink.getFirstColumn(), sourceRow.getFirstCellNum());
+					int lastColumn = Math.min(hyperlink.getLastColumn(), sourceRow.getLastCellNum() - 1);
+					for (int columnIndex = firstColumn; columnIndex <= lastColumn; columnIndex++) {
+						if (sourceRow.getCell(columnIndex) != null) {
+							targetRow.getCell(columnIndex).setHyperlink(hyperlink);
+						}
+					}
+				}
+			}
+		}
 	}
 
 	/**
-	 * Converts a CSV file to an Excel file.
+	 * Converts a CSV file to an Excel file, reading it with the platform charset.
 	 *
 	 * @param directoryPath the directory path for input and output files
 	 * @param fileName      the name of the CSV file to convert
 	 * @throws IOException if an I/O error occurs
+	 * @see #convertCSVtoXLSX(String, String, boolean, Charset)
 	 */
 	public static void convertCSVtoXLSX(String directoryPath, String fileName) throws IOException {
+		convertCSVtoXLSX(directoryPath, fileName, false, Charset.defaultCharset());
+	}
+
+	/**
+	 * Converts a CSV file to an Excel file in streaming mode. Records are parsed
+	 * one at a time by a {@link CsvParser}, quoted fields holding separators or
+	 * line breaks included, and written through the row window of a streaming
+	 * workbook, so the memory used does not depend on the size of the file.
+	 * Finite numbers and dates
+	 * (yyyy-MM-dd, yyyy-MM-dd HH:mm:ss and dd/MM/yyyy) become typed cells, other
+	 * fields stay strings. When a sheet reaches the maximum number of rows of the
+	 * XLSX format, the conversion goes on in a new sheet.
+	 *
+	 * @param directoryPath the directory path for input and output files
+	 * @param fileName      the name of the CSV file to convert
+	 * @param hasHeader     whether the first line is a header, kept as strings and
+	 *                      repeated at the top of every sheet
+	 * @param charset       the charset of the CSV file, encoding ASCII as ASCII
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void convertCSVtoXLSX(String directoryPath, String fileName, boolean hasHeader, Charset charset)
+			throws IOException {
 		String csvFilePath = directoryPath + fileName;
-		try (FileInputStream inputStream = new FileInputStream(csvFilePath);
-				XSSFWorkbook workbook = new XSSFWorkbook()) {
+		String xlsFilePath = csvFilePath.replace(".csv", ".xlsx");
+		char separator = CsvUtils.getSeparator();
+		int maxRows = SpreadsheetVersion.EXCEL2007.getMaxRows();
+		SXSSFWorkbook workbook = createStreamingWorkbook();
+
+		try (CsvParser parser = new CsvParser(new File(csvFilePath), separator)) {
+			parser.setCharset(charset);
+			CellStyle dateStyle = workbook.createCellStyle();
+			dateStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd"));
+			CellStyle dateTimeStyle = workbook.createCellStyle();
+			dateTimeStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
 
-			XSSFSheet sheet = workbook.createSheet("Sheet1");
+			Sheet sheet = workbook.createSheet("Sheet1");
 			int rowNum = 0;
+			List<String> header = null;
 
-			try (Scanner scanner = new Scanner(inputStream)) {
-				while (scanner.hasNextLine()) {
-					String[] data = scanner.nextLine().split(CsvUtils.getSeparator() + "");
-					XSSFRow row = sheet.createRow(rowNum++);
-					int colNum = 0;
-
-					for (String field : data) {
-						XSSFCellStyle style = workbook.createCellStyle();
-						style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-						XSSFCell cell = row.createCell(colNum++);
-						cell.setCellValue(field);
+			while (parser.next()) {
+				// Roll over to a new sheet when the current one is full
+				if (rowNum == maxRows) {
+					sheet = workbook.createSheet("Sheet" + (workbook.getNumberOfSheets() + 1));
+					rowNum = 0;
+					if (header != null) {
+						writeStringRow(sheet.createRow(rowNum++), header);
 					}
 				}
-			}
 
-			String xlsFilePath = csvFilePath.replace(".csv", ".xlsx");
-			try (FileOutputStream outputStream = new FileOutputStream(new File(xlsFilePath))) {
-				workbook.write(outputStream);
+				Row row = sheet.createRow(rowNum++);
+				if (hasHeader && header == null) {
+					header = new ArrayList<>();
+					for (int colNum = 0; colNum < parser.getFieldCount(); colNum++) {
+						header.add(parser.getField(colNum));
+					}
+					writeStringRow(row, header);
+					continue;
+				}
+				for (int colNum = 0; colNum < parser.getFieldCount(); colNum++) {
+					if (!parser.isEmpty(colNum)) {
+						setTypedCellValue(row.createCell(colNum), parser.getField(colNum), dateStyle, dateTimeStyle);
+					}
+				}
 			}
+
+			writeExcelFile(workbook, xlsFilePath);
+		} finally {
+			workbook.dispose();
+			workbook.close();
 		}
 		logger.info("Conversion of file " + fileName + " completed.");
 	}
 
+	/**
+	 * Writes fields as string cells.
+	 *
+	 * @param row    the row to write to
+	 * @param fields the fields to write
+	 */
+	private static void writeStringRow(Row row, List<String> fields) {
+		for (int colNum = 0; colNum < fields.size(); colNum++) {
+			row.createCell(colNum).setCellValue(fields.get(colNum));
+		}
+	}
+
+	/**
+	 * Sets the value of a cell from a CSV field, as a number or a date when the
+	 * field holds one, as a string otherwise, such as a number too large for a
+	 * double.
+	 *
+	 * @param cell          the cell to set
+	 * @param field         the CSV field, not empty
+	 * @param dateStyle     the style of date cells
+	 * @param dateTimeStyle the style of date and time cells
+	 */
+	private static void setTypedCellValue(Cell cell, String field, CellStyle dateStyle, CellStyle dateTimeStyle) {
+		if (isCsvNumber(field)) {
+			double value = Double.parseDouble(field.replace(DECIMAL_SEPARATOR, '.'));
+			if (Double.isFinite(value)) {
+				cell.setCellValue(value);
+				return;
+			}
+		}
+		try {
+			if (field.length() == 10 && field.charAt(4) == '-' && field.charAt(7) == '-') {
+				cell.setCellValue(LocalDate.parse(field));
+				cell.setCellStyle(dateStyle);
+				return;
+			}
+			if (field.length() == 10 && field.charAt(2) == '/' && field.charAt(5) == '/') {
+				cell.setCellValue(LocalDate.parse(field, SLASHED_DATE));
+				cell.setCellStyle(dateStyle);
+				return;
+			}
+			if (field.length() == 19 && field.charAt(4) == '-' && field.charAt(13) == ':') {
+				cell.setCellValue(LocalDateTime.parse(field.replace(' ', 'T')));
+				cell.setCellStyle(dateTimeStyle);
+				return;
+			}
+		} catch (DateTimeParseException e) {
+			// Not a date after all, kept as a string
+		}
+		cell.setCellValue(field);
+	}
+
+	/**
+	 * Checks if a CSV field is a number which can be stored as a numeric cell
+	 * without losing information. Numbers with a leading zero, such as codes, and
+	 * numbers with more than 15 digits are left as strings.
+	 *
+	 * @param field the CSV field
+	 * @return true if the field is a number, false otherwise
+	 */
+	private static boolean isCsvNumber(String field) {
+		int length = field.length();
+		int i = 0;
+		if (field.charAt(0) == '-' || field.charAt(0) == '+') {
+			i++;
+		}
+		int integerStart = i;
+		int digits = 0;
+		while (i < length && isAsciiDigit(field.charAt(i))) {
+			i++;
+			digits++;
+		}
+		if (digits > 1 && field.charAt(integerStart) == '0') {
+			return false; // Leading zero, such as a code
+		}
+		if (i < length && field.charAt(i) == DECIMAL_SEPARATOR) {
+			i++;
+			while (i < length && isAsciiDigit(field.charAt(i))) {
+				i++;
+				digits++;
+			}
+		}
+		if (digits == 0 || digits > 15) {
+			return false;
+		}
+		if (i < length && (field.charAt(i) == 'e' || field.charAt(i) == 'E')) {
+			i++;
+			if (i < length && (field.charAt(i) == '-' || field.charAt(i) == '+')) {
+				i++;
+			}
+			int exponentStart = i;
+			while (i < length && isAsciiDigit(field.charAt(i))) {
+				i++;
+			}
+			if (i == exponentStart) {
+				return false;
+			}
+		}
+		return i == length;
+	}
+
+	/**
+	 * Checks if a character is a digit from 0 to 9.
+	 *
+	 * @param c the character to check
+	 * @return true if the character is an ASCII digit, false otherwise
+	 */
+	private static boolean isAsciiDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+
+	/**
+	 * Exports sheets of an Excel file to CSV files, one file per sheet, using the
+	 * separator of {@link CsvUtils}. The workbook is opened once by an
+	 * {@link XlsxEventReader}, whose shared strings and styles are shared by the
+	 * readers streaming the sheets in parallel, and each sheet is written by a
+	 * {@link CsvWriter}. Rows missing from the sheet are skipped.
+	 *
+	 * @param xlsxFile        the Excel file to export
+	 * @param outputDirectory the directory receiving the CSV files, named after the
+	 *                        Excel file and the sheet
+	 * @param sheetNames      the names of the sheets to export, or null for all
+	 *                        sheets
+	 * @param columns         the 0-based indices of the columns to export, in
+	 *                        output order, or null for all columns
+	 * @param formattedValues true to export values as Excel displays them, false
+	 *                        to export the stored values (dates as serial numbers)
+	 * @param threads         the maximum number of sheets exported at the same
+	 *                        time
+	 * @return the CSV files, in sheet order
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static List<File> exportSheetsToCsv(File xlsxFile, File outputDirectory, List<String> sheetNames,
+			int[] columns, boolean formattedValues, int threads) throws IOException {
+		try (XlsxEventReader reader = new XlsxEventReader(xlsxFile)) {
+			List<String> sheetsToExport = sheetNames != null ? sheetNames : reader.getSheetNames();
+			if (sheetsToExport.isEmpty()) {
+				return new ArrayList<>();
+			}
+			return exportSheetsToCsv(reader, xlsxFile, outputDirectory, sheetsToExport, columns, formattedValues,
+					threads);
+		}
+	}
+
+	/**
+	 * Exports sheets of an opened Excel file to CSV files in parallel.
+	 *
+	 * @param reader          the reader which opened the Excel file
+	 * @param xlsxFile        the Excel file to export
+	 * @param outputDirectory the directory receiving the CSV files
+	 * @param sheetsToExport  the names of the sheets to export
+	 * @param columns         the indices of the columns to export, or null for all
+	 * @param formattedValues whether to export formatted or stored values
+	 * @param threads         the maximum number of sheets exported at the same
+	 *                        time
+	 * @return the CSV files, in sheet order
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static List<File> exportSheetsToCsv(XlsxEventReader reader, File xlsxFile, File outputDirectory,
+			List<String> sheetsToExport, int[] columns, boolean formattedValues, int threads) throws IOException {
+		String baseName = xlsxFile.getName().replaceFirst("\\.xlsx$", "");
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sheetsToExport.size())));
+		List<Future<File>> futures = new ArrayList<>();
+		try {
+			for (String sheetName : sheetsToExport) {
+				File csvFile = new File(outputDirectory, baseName + "_" + sheetName + ".csv");
+				futures.add(executor.submit(() -> {
+					exportSheetToCsv(reader, xlsxFile, sheetName, csvFile, columns, formattedValues);
+					return csvFile;
+				}));
+			}
+			List<File> csvFiles = new ArrayList<>();
+			for (Future<File> future : futures) {
+				csvFiles.add(future.get());
+			}
+			return csvFiles;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Export of file " + xlsxFile + " interrupted", e);
+		} catch (ExecutionException e) {
+			logger.error("An error occurred while exporting file " + xlsxFile + " to CSV", e.getCause());
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+					: new IOException("Could not export file " + xlsxFile, e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Exports one sheet of an Excel file to a CSV file, read by its own reader
+	 * sharing the package of the given one.
+	 *
+	 * @param workbookReader  the reader which opened the Excel file
+	 * @param xlsxFile        the Excel file to export
+	 * @param sheetName       the name of the sheet to export
+	 * @param csvFile         the CSV file to write
+	 * @param columns         the indices of the columns to export, or null for all
+	 * @param formattedValues whether to export formatted or stored values
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void exportSheetToCsv(XlsxEventReader workbookReader, File xlsxFile, String sheetName,
+			File csvFile, int[] columns, boolean formattedValues) throws IOException {
+		try (XlsxEventReader reader = new XlsxEventReader(workbookReader);
+				CsvWriter writer = new CsvWriter(csvFile, StandardCharsets.UTF_8)) {
+			int[] width = { -1 };
+			IOException[] writeError = { null };
+			boolean found = reader.readSheet(sheetName, (name, row) -> {
+				if (writeError[0] != null) {
+					return;
+				}
+				if (width[0] < 0) {
+					width[0] = row.getLastCellNum(); // Width of the first row, usually the header
+				}
+				int size = columns != null ? columns.length : Math.max(width[0], row.getLastCellNum());
+				try {
+					for (int i = 0; i < size; i++) {
+						int column = columns != null ? columns[i] : i;
+						writer.writeField(formattedValues ? row.getFormattedValue(column) : getRawValue(row, column));
+					}
+					writer.endRow();
+				} catch (IOException e) {
+					writeError[0] = e;
+				}
+			});
+			if (writeError[0] != null) {
+				throw writeError[0];
+			}
+			if (!found) {
+				throw new IOException("Sheet " + sheetName + " not found in file " + xlsxFile);
+			}
+		}
+		logger.info("Sheet " + sheetName + " exported to " + csvFile);
+	}
+
+	/**
+	 * Retrieves the stored value of a streamed cell as text: numbers without
+	 * number format, integers without decimal part.
+	 *
+	 * @param row    the row
+	 * @param column the 0-based column index
+	 * @return the stored value as text, empty for a blank cell
+	 */
+	private static String getRawValue(XlsxEventReader.EventRow row, int column) {
+		switch (row.getCellType(column)) {
+		case NUMERIC:
+			double value = row.getNumericValue(column);
+			if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+				return Long.toString((long) value);
+			}
+			return Double.toString(value);
+		default:
+			return row.getFormattedValue(column);
+		}
+	}
+
 }